@@ -0,0 +1,244 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.io.myopenhab.internal;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class collects item updates which are sent to my.openHAB. Updates of the same item
+ * within a short window are coalesced, so only the latest state is sent. If batching is
+ * enabled, all updates of a window are sent as one message, otherwise one message is sent
+ * per item. Only updates of exposed items are sent if a set of exposed items is given.
+ *
+ * @since 2.0.0
+ */
+
+public class ItemUpdateUplink {
+    /*
+     * Logger for this class
+     */
+    private static Logger logger = LoggerFactory.getLogger(ItemUpdateUplink.class);
+
+    /*
+     * This constant defines the default time in milliseconds updates are collected before they are sent
+     */
+    public static final long DEFAULT_WINDOW = 200;
+
+    /*
+     * This constant defines the size of a single itemupdate message without item name and state
+     */
+    private static final int ITEM_UPDATE_OVERHEAD = "{\"itemName\":\"\",\"itemStatus\":\"\"}".length();
+
+    private final MyOpenHABClient client;
+    private final long window;
+    private final Set<String> exposedItems;
+    private final boolean batch;
+
+    /*
+     * This map holds the latest state of each item updated in the current window, guarded by this
+     */
+    private LinkedHashMap<String, String> pendingUpdates = new LinkedHashMap<String, String>();
+
+    /*
+     * This variable is set once the uplink has been closed, guarded by this
+     */
+    private boolean closed = false;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "my.openHAB item updates");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final AtomicLong receivedUpdates = new AtomicLong();
+    private final AtomicLong filteredUpdates = new AtomicLong();
+    private final AtomicLong sentUpdates = new AtomicLong();
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong droppedUpdates = new AtomicLong();
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    /**
+     * Constructor of ItemUpdateUplink
+     *
+     * @param client the client to send the updates with
+     * @param window time in milliseconds updates are collected, 0 to send every update right away
+     * @param exposedItems names of the items whose updates are sent, all items if empty
+     * @param batch true to send the updates of a window as one itemupdates message
+     *
+     */
+    public ItemUpdateUplink(MyOpenHABClient client, long window, Set<String> exposedItems, boolean batch) {
+        this.client = client;
+        this.window = Math.max(0, window);
+        this.exposedItems = exposedItems != null ? exposedItems : Collections.<String> emptySet();
+        this.batch = batch;
+    }
+
+    /**
+     * Adds an item update to the current window
+     *
+     * @param itemName the name of the item
+     * @param itemState updated item state
+     *
+     */
+    public void update(String itemName, String itemState) {
+        if (!exposedItems.isEmpty() && !exposedItems.contains(itemName)) {
+            filteredUpdates.incrementAndGet();
+            return;
+        }
+        receivedUpdates.incrementAndGet();
+        receivedBytes.addAndGet(ITEM_UPDATE_OVERHEAD + itemName.length() + itemState.length());
+        if (window > 0) {
+            synchronized (this) {
+                if (!closed) {
+                    boolean first = pendingUpdates.isEmpty();
+                    // remove first to keep the order of the latest updates
+                    pendingUpdates.remove(itemName);
+                    pendingUpdates.put(itemName, itemState);
+                    if (first) {
+                        scheduler.schedule(new Runnable() {
+                            @Override
+                            public void run() {
+                                flush();
+                            }
+                        }, window, TimeUnit.MILLISECONDS);
+                    }
+                    return;
+                }
+            }
+        }
+        // without a window, or once the pending updates have been flushed on close, send right away
+        send(Collections.singletonMap(itemName, itemState));
+    }
+
+    /**
+     * Sends all updates of the current window
+     */
+    public void flush() {
+        Map<String, String> updates;
+        synchronized (this) {
+            if (pendingUpdates.isEmpty()) {
+                return;
+            }
+            updates = pendingUpdates;
+            pendingUpdates = new LinkedHashMap<String, String>();
+        }
+        send(updates);
+    }
+
+    private void send(Map<String, String> updates) {
+        if (batch && updates.size() > 1) {
+            long bytes = client.sendItemUpdates(updates);
+            if (bytes > 0) {
+                sentMessages.incrementAndGet();
+                sentUpdates.addAndGet(updates.size());
+                sentBytes.addAndGet(bytes);
+            } else {
+                for (Map.Entry<String, String> update : updates.entrySet()) {
+                    dropped(update.getKey(), update.getValue());
+                }
+            }
+        } else {
+            for (Map.Entry<String, String> update : updates.entrySet()) {
+                if (client.sendItemUpdate(update.getKey(), update.getValue())) {
+                    sentMessages.incrementAndGet();
+                    sentUpdates.incrementAndGet();
+                    sentBytes.addAndGet(
+                            ITEM_UPDATE_OVERHEAD + update.getKey().length() + update.getValue().length());
+                } else {
+                    dropped(update.getKey(), update.getValue());
+                }
+            }
+        }
+        logger.trace("Sent {} item updates, {}", updates.size(), this);
+    }
+
+    /*
+     * Counts an update which could not be sent because my.openHAB is not connected
+     */
+    private void dropped(String itemName, String itemState) {
+        droppedUpdates.incrementAndGet();
+        droppedBytes.addAndGet(ITEM_UPDATE_OVERHEAD + itemName.length() + itemState.length());
+    }
+
+    /**
+     * Sends the pending updates and stops collecting updates, later updates are sent right away
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        scheduler.shutdown();
+        flush();
+        logger.debug("Item updates: {}", this);
+    }
+
+    public long getReceivedUpdates() {
+        return receivedUpdates.get();
+    }
+
+    /**
+     * @return the number of updates of items which are not exposed
+     */
+    public long getFilteredUpdates() {
+        return filteredUpdates.get();
+    }
+
+    public long getSentUpdates() {
+        return sentUpdates.get();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    /**
+     * @return the number of updates which could not be sent because my.openHAB was not connected
+     */
+    public long getDroppedUpdates() {
+        return droppedUpdates.get();
+    }
+
+    /**
+     * @return the number of messages saved compared to sending one message per received update
+     */
+    public long getSavedMessages() {
+        return receivedUpdates.get() - droppedUpdates.get() - sentMessages.get();
+    }
+
+    /**
+     * @return the estimated number of bytes saved compared to sending one message per received update
+     */
+    public long getSavedBytes() {
+        return receivedBytes.get() - droppedBytes.get() - sentBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "received=" + getReceivedUpdates() + ", filtered=" + getFilteredUpdates() + ", sent="
+                + getSentUpdates() + " in " + getSentMessages() + " messages, dropped=" + getDroppedUpdates()
+                + ", saved " + getSavedMessages() + " messages and " + getSavedBytes() + " bytes";
+    }
+}
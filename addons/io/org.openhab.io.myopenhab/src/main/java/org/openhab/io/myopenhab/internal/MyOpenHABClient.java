@@ -15,24 +15,26 @@ import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.Request;
 import org.eclipse.jetty.client.api.Request.FailureListener;
 import org.eclipse.jetty.client.api.Response;
-import org.eclipse.jetty.client.api.Response.ContentListener;
+import org.eclipse.jetty.client.api.Response.AsyncContentListener;
 import org.eclipse.jetty.client.api.Response.HeadersListener;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpMethod;
-import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.util.URIUtil;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.openhab.core.OpenHAB;
@@ -44,6 +46,7 @@ import io.socket.client.Manager;
 import io.socket.client.Socket;
 import io.socket.emitter.Emitter;
 import io.socket.engineio.client.Transport;
+import io.socket.thread.EventThread;
 
 /**
  * This class provides communication between openHAB and my.openHAB service.
@@ -74,6 +77,18 @@ public class MyOpenHABClient {
      */
     private static final int HTTP_CLIENT_TIMEOUT = 30000;
 
+    /*
+     * This constant defines the maximum size of a response content chunk sent to my.openHAB.
+     * Content received from openHAB is collected up to this size before it is sent
+     */
+    private static final int RESPONSE_CHUNK_SIZE = 64 * 1024;
+
+    /*
+     * This constant defines the time in milliseconds after which a started chunk of response content
+     * is sent even if the chunk is not full, so that streamed responses are not delayed
+     */
+    private static final long RESPONSE_FLUSH_DELAY = 20;
+
     /*
      * This variable holds base URL for my.openHAB cloud connections, has a default
      * value but can be changed
@@ -100,13 +115,13 @@ public class MyOpenHABClient {
      */
     private HttpClient jettyClient;
     /*
-     * This hashmap holds HTTP requests to local openHAB which are currently running
+     * This variable holds HTTP requests to local openHAB which are currently running or waiting
      */
-    private HashMap<Integer, Request> runningRequests;
+    private RequestMultiplexer requests;
     /*
      * This variable indicates if connection to my.openHAB cloud is currently in an established state
      */
-    private boolean isConnected;
+    private volatile boolean isConnected;
     /*
      * This variable holds version of local openHAB
      */
@@ -132,7 +147,7 @@ public class MyOpenHABClient {
     public MyOpenHABClient(String uuid, String secret) {
         this.uuid = uuid;
         this.secret = secret;
-        runningRequests = new HashMap<Integer, Request>();
+        requests = new RequestMultiplexer();
         jettyClient = new HttpClient();
         jettyClient.setMaxConnectionsPerDestination(HTTP_CLIENT_MAX_CONNECTIONS_PER_DEST);
         jettyClient.setConnectTimeout(HTTP_CLIENT_TIMEOUT);
@@ -230,6 +245,9 @@ public class MyOpenHABClient {
     public void onDisconnect() {
         logger.info("Disconnected from my.openHAB service (UUID = {}, base URL = {})", this.uuid, this.localBaseUrl);
         isConnected = false;
+        // Clean up the list of running requests, so that no waiting request is started anymore
+        logger.debug("Proxied requests: {}", requests);
+        requests.clear();
         // On disconnect stop jetty client to shutdown all ongoing requests if there were any
         if (jettyClient != null) {
             try {
@@ -238,10 +256,6 @@ public class MyOpenHABClient {
                 logger.error("Could not stop Jetty client: {}", e.getMessage());
             }
         }
-        // And clean up the list of running requests
-        if (runningRequests != null) {
-            runningRequests.clear();
-        }
     }
 
     /**
@@ -322,10 +336,12 @@ public class MyOpenHABClient {
                 return;
             }
             ResponseListener listener = new ResponseListener(requestId);
-            request.onResponseHeaders(listener).onResponseContent(listener).onRequestFailure(listener).send(listener);
-            // If successfully submitted request to http client, add it to the list of currently
-            // running requests to be able to cancel it if needed
-            runningRequests.put(requestId, request);
+            request.onResponseHeaders(listener).onResponseContentAsync(listener).onRequestFailure(listener);
+            // The request is sent as soon as there are not too many requests running, until then it
+            // is kept in the list of requests to be able to cancel it if needed
+            if (!requests.submit(requestId, request, listener)) {
+                sendRejection(requestId);
+            }
         } catch (JSONException e) {
             logger.error(e.getMessage());
         } catch (IOException e) {
@@ -354,16 +370,26 @@ public class MyOpenHABClient {
         }
     }
 
+    private void sendRejection(int requestId) {
+        JSONObject responseJson = new JSONObject();
+        try {
+            responseJson.put("id", requestId);
+            responseJson.put("responseStatusText", "openHAB is busy, too many requests");
+            socket.emit("responseError", responseJson);
+            responseJson = new JSONObject();
+            responseJson.put("id", requestId);
+            socket.emit("responseFinished", responseJson);
+        } catch (JSONException e) {
+            logger.error(e.getMessage());
+        }
+    }
+
     private void handleCancelEvent(JSONObject data) {
         try {
             int requestId = data.getInt("id");
             logger.debug("Received cancel for request {}", requestId);
-            // Find and abort running request
-            if (runningRequests.containsKey(requestId)) {
-                Request request = runningRequests.get(requestId);
-                request.abort(new InterruptedException());
-                runningRequests.remove(requestId);
-            }
+            // Drop waiting or abort running request
+            requests.cancel(requestId);
         } catch (JSONException e) {
             logger.error(e.getMessage());
         }
@@ -484,10 +510,11 @@ public class MyOpenHABClient {
      *
      * @param itemName the name of the item
      * @param itemState updated item state
+     * @return true if the update has been sent
      *
      */
 
-    public void sendItemUpdate(String itemName, String itemState) {
+    public boolean sendItemUpdate(String itemName, String itemState) {
         if (isConnected()) {
             logger.debug("Sending update '{}' for item '{}'", itemState, itemName);
             JSONObject itemUpdateMessage = new JSONObject();
@@ -495,12 +522,44 @@ public class MyOpenHABClient {
                 itemUpdateMessage.put("itemName", itemName);
                 itemUpdateMessage.put("itemStatus", itemState);
                 socket.emit("itemupdate", itemUpdateMessage);
+                return true;
             } catch (JSONException e) {
                 logger.error(e.getMessage());
             }
         } else {
             logger.debug("No connection, Item update is not sent");
         }
+        return false;
+    }
+
+    /**
+     * Send updates of several items to my.openHAB in one message
+     *
+     * @param itemStates updated item states by item name
+     * @return the size of the sent message, 0 if it has not been sent
+     *
+     */
+
+    public long sendItemUpdates(Map<String, String> itemStates) {
+        if (isConnected()) {
+            logger.debug("Sending updates for {} items", itemStates.size());
+            JSONArray itemUpdatesMessage = new JSONArray();
+            try {
+                for (Map.Entry<String, String> itemState : itemStates.entrySet()) {
+                    JSONObject itemUpdateMessage = new JSONObject();
+                    itemUpdateMessage.put("itemName", itemState.getKey());
+                    itemUpdateMessage.put("itemStatus", itemState.getValue());
+                    itemUpdatesMessage.put(itemUpdateMessage);
+                }
+                socket.emit("itemupdates", itemUpdatesMessage);
+                return itemUpdatesMessage.toString().length();
+            } catch (JSONException e) {
+                logger.error(e.getMessage());
+            }
+        } else {
+            logger.debug("No connection, Item updates are not sent");
+        }
+        return 0;
     }
 
     /**
@@ -517,6 +576,8 @@ public class MyOpenHABClient {
 
     public void shutdown() {
         logger.info("Shutting down my.openHAB service connection");
+        logger.debug("Proxied requests: {}", requests);
+        requests.clear();
         try {
             jettyClient.stop();
         } catch (Exception e) {
@@ -547,6 +608,36 @@ public class MyOpenHABClient {
         this.localBaseUrl = ohBaseUrl;
     }
 
+    /**
+     * Set the maximum number of requests from my.openHAB which are sent to openHAB at the same time
+     *
+     * @param maxRequests maximum number of running requests, further requests wait
+     *
+     */
+
+    public void setMaxRequests(int maxRequests) {
+        requests.setMaxRequests(maxRequests);
+    }
+
+    /**
+     * Set the time after which requests from my.openHAB are aborted
+     *
+     * @param requestTimeout timeout in milliseconds, 0 to disable
+     *
+     */
+
+    public void setRequestTimeout(long requestTimeout) {
+        requests.setRequestTimeout(requestTimeout);
+    }
+
+    /**
+     * Returns the requests from my.openHAB which are currently running or waiting
+     */
+
+    public RequestMultiplexer getRequests() {
+        return requests;
+    }
+
     public String getOpenHABVersion() {
         return openHABVersion;
     }
@@ -561,16 +652,25 @@ public class MyOpenHABClient {
 
     /*
      * An internal class which extends ContentExchange and forwards response
-     * headers and data back to my.openHAB
+     * headers and data back to my.openHAB. Response content is collected into
+     * chunks of up to RESPONSE_CHUNK_SIZE bytes which are sent as binary
+     * attachments. Reading further content from openHAB is resumed only after
+     * a full chunk has been handed over to the Socket.IO connection, so a
+     * large response cannot pile up in memory.
      *
      */
 
     private class ResponseListener
-            implements Response.CompleteListener, HeadersListener, ContentListener, FailureListener {
+            implements Response.CompleteListener, HeadersListener, AsyncContentListener, FailureListener {
 
         private int mRequestId;
         private boolean mHeadersSent = false;
 
+        private byte[] mChunk;
+        private int mChunkLength = 0;
+        private Scheduler.Task mFlushTask;
+        private long mSentChunks = 0;
+
         public ResponseListener(int requestId) {
             mRequestId = requestId;
         }
@@ -589,8 +689,8 @@ public class MyOpenHABClient {
 
         @Override
         public void onComplete(Result result) {
-            // Remove this request from list of running requests
-            runningRequests.remove(mRequestId);
+            // Remove this request from list of running requests and start the next waiting one
+            requests.complete(mRequestId, this);
             if (result.isFailed()) {
                 logger.warn("Jetty request {} failed: {}", mRequestId, result.getFailure().getMessage());
                 logger.warn(result.getRequestFailure().getMessage());
@@ -599,7 +699,18 @@ public class MyOpenHABClient {
             JSONObject responseJson = new JSONObject();
             try {
                 responseJson.put("id", mRequestId);
-                socket.emit("responseFinished", responseJson);
+                synchronized (this) {
+                    // the rest of the content has to be sent before the response is finished,
+                    // content of a failed or cancelled response is dropped
+                    cancelFlush();
+                    if (result.isFailed()) {
+                        mChunk = null;
+                        mChunkLength = 0;
+                    } else {
+                        sendChunk();
+                    }
+                    socket.emit("responseFinished", responseJson);
+                }
                 logger.debug("Finished responding to request {}", mRequestId);
             } catch (JSONException e) {
                 logger.error(e.getMessage());
@@ -621,17 +732,97 @@ public class MyOpenHABClient {
         }
 
         @Override
-        public void onContent(Response response, ByteBuffer content) {
-            logger.debug("Jetty received response content of size " + String.valueOf(content.remaining()));
+        public void onContent(Response response, ByteBuffer content, final Callback callback) {
+            logger.debug("Jetty received response content of size {}", content.remaining());
+            boolean sent = false;
+            synchronized (this) {
+                while (content.hasRemaining()) {
+                    if (mChunk == null) {
+                        mChunk = new byte[RESPONSE_CHUNK_SIZE];
+                    }
+                    int length = Math.min(content.remaining(), mChunk.length - mChunkLength);
+                    content.get(mChunk, mChunkLength, length);
+                    mChunkLength += length;
+                    if (mChunkLength == mChunk.length) {
+                        sendChunk();
+                        sent = true;
+                    }
+                }
+                if (mChunkLength > 0) {
+                    scheduleFlush();
+                }
+            }
+            if (sent) {
+                // Socket.IO hands the chunk over to the connection on its event thread,
+                // continue reading once this has happened
+                EventThread.exec(new Runnable() {
+                    @Override
+                    public void run() {
+                        jettyClient.getExecutor().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.succeeded();
+                            }
+                        });
+                    }
+                });
+            } else {
+                callback.succeeded();
+            }
+        }
+
+        /*
+         * Sends the collected content to my.openHAB, must be called while holding the lock
+         */
+        private void sendChunk() {
+            if (mChunkLength == 0) {
+                return;
+            }
+            cancelFlush();
             JSONObject responseJson = new JSONObject();
             try {
                 responseJson.put("id", mRequestId);
-                responseJson.put("body", BufferUtil.toArray(content));
+                responseJson.put("body",
+                        mChunkLength == mChunk.length ? mChunk : Arrays.copyOf(mChunk, mChunkLength));
                 socket.emit("responseContentBinary", responseJson);
-                logger.debug("Sent content to request {}", mRequestId);
+                logger.debug("Sent {} bytes of content to request {}", mChunkLength, mRequestId);
             } catch (JSONException e) {
                 logger.error(e.getMessage());
             }
+            mChunk = null;
+            mChunkLength = 0;
+            mSentChunks++;
+        }
+
+        /*
+         * Sends the current chunk RESPONSE_FLUSH_DELAY after it has been started, even if
+         * more content keeps arriving, must be called while holding the lock
+         */
+        private void scheduleFlush() {
+            if (mFlushTask != null) {
+                return;
+            }
+            final long chunk = mSentChunks;
+            mFlushTask = jettyClient.getScheduler().schedule(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (ResponseListener.this) {
+                        if (mSentChunks != chunk) {
+                            // the chunk has been sent while this task was waiting for the lock
+                            return;
+                        }
+                        mFlushTask = null;
+                        sendChunk();
+                    }
+                }
+            }, RESPONSE_FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+
+        private void cancelFlush() {
+            if (mFlushTask != null) {
+                mFlushTask.cancel();
+                mFlushTask = null;
+            }
         }
 
         @Override
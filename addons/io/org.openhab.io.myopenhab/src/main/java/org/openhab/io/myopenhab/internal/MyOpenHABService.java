@@ -15,6 +15,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -64,6 +65,7 @@ public class MyOpenHABService implements PersistenceService, ActionService, MyOp
 
     public static String myohVersion = null;
     private MyOpenHABClient myOHClient;
+    private volatile ItemUpdateUplink itemUpdateUplink;
     private boolean persistenceEnabled = false;
     protected ItemRegistry itemRegistry = null;
     protected EventPublisher eventPublisher = null;
@@ -129,23 +131,68 @@ public class MyOpenHABService implements PersistenceService, ActionService, MyOp
 
     protected void deactivate() {
         logger.debug("my.openHAB service deactivated");
+        if (itemUpdateUplink != null) {
+            itemUpdateUplink.close();
+        }
         myOHClient.shutdown();
     }
 
     protected void modified(Map<String, ?> config) {
+        int maxRequests = RequestMultiplexer.DEFAULT_MAX_REQUESTS;
+        long requestTimeout = 0;
+        long updateWindow = ItemUpdateUplink.DEFAULT_WINDOW;
+        boolean batchUpdates = false;
+        Set<String> exposedItems = new HashSet<String>();
         if (config != null) {
             persistenceEnabled = "persistence".equals(config.get("mode"));
+            maxRequests = (int) getLongProperty(config, "maxRequests", maxRequests);
+            requestTimeout = getLongProperty(config, "requestTimeout", requestTimeout);
+            updateWindow = getLongProperty(config, "updateWindow", updateWindow);
+            batchUpdates = config.get("batchUpdates") != null
+                    && Boolean.parseBoolean(config.get("batchUpdates").toString().trim());
+            if (config.get("expose") != null) {
+                for (String itemName : config.get("expose").toString().split(",")) {
+                    if (!itemName.trim().isEmpty()) {
+                        exposedItems.add(itemName.trim());
+                    }
+                }
+            }
         } else {
             logger.debug("config is null");
         }
         logger.debug("UUID = " + InstanceUUID.get() + ", secret = " + getSecret());
         myOHClient = new MyOpenHABClient(InstanceUUID.get(), getSecret());
         myOHClient.setOpenHABVersion(OpenHAB.getVersion());
+        myOHClient.setMaxRequests(maxRequests);
+        myOHClient.setRequestTimeout(requestTimeout);
         myOHClient.connect();
         myOHClient.setListener(this);
+        // replace the uplink before closing the old one, updates which still reach the old one are sent right away
+        ItemUpdateUplink previousUplink = itemUpdateUplink;
+        itemUpdateUplink = new ItemUpdateUplink(myOHClient, updateWindow, exposedItems, batchUpdates);
+        if (previousUplink != null) {
+            previousUplink.close();
+        }
         MyOpenHABAction.myOpenHABService = this;
     }
 
+    /**
+     * Reads a numeric configuration property, returns the default value if it is not set or invalid
+     */
+
+    private long getLongProperty(Map<String, ?> config, String key, long defaultValue) {
+        Object value = config.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid value '{}' for {}, using {}", value, key, defaultValue);
+            return defaultValue;
+        }
+    }
+
     @Override
     public String getActionClassName() {
         return MyOpenHABAction.class.getCanonicalName();
@@ -255,13 +302,13 @@ public class MyOpenHABService implements PersistenceService, ActionService, MyOp
     @Override
     public void store(Item item) {
         persistenceEnabled = true;
-        myOHClient.sendItemUpdate(item.getName(), item.getState().toString());
+        itemUpdateUplink.update(item.getName(), item.getState().toString());
     }
 
     @Override
     public void store(Item item, String alias) {
         persistenceEnabled = true;
-        myOHClient.sendItemUpdate(item.getName(), item.getState().toString());
+        itemUpdateUplink.update(item.getName(), item.getState().toString());
     }
 
     @Override
@@ -299,7 +346,7 @@ public class MyOpenHABService implements PersistenceService, ActionService, MyOp
     public void receive(Event event) {
         if (!persistenceEnabled) {
             ItemStateEvent ise = (ItemStateEvent) event;
-            myOHClient.sendItemUpdate(ise.getItemName(), ise.getItemState().toString());
+            itemUpdateUplink.update(ise.getItemName(), ise.getItemState().toString());
         }
     }
 }
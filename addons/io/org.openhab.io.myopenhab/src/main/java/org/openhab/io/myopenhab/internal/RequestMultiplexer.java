@@ -0,0 +1,340 @@
+/**
+ * Copyright (c) 2010-2015, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.io.myopenhab.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class keeps track of the requests which my.openHAB proxies to the local openHAB.
+ * At most maxRequests of them are sent to openHAB at the same time, further requests
+ * wait in the order they arrived until a running request completes. Cancelling a request
+ * removes it from the queue or aborts it and frees its slot right away.
+ * It also collects statistics about the latency of the requests and the time they waited.
+ *
+ * @since 2.0.0
+ */
+
+public class RequestMultiplexer {
+    /*
+     * Logger for this class
+     */
+    private static Logger logger = LoggerFactory.getLogger(RequestMultiplexer.class);
+
+    /*
+     * This constant defines the default maximum number of requests sent to openHAB at the same time
+     */
+    public static final int DEFAULT_MAX_REQUESTS = 50;
+
+    /*
+     * This constant defines the maximum number of waiting requests per allowed running request,
+     * further requests are rejected
+     */
+    private static final int QUEUED_REQUESTS_PER_RUNNING_REQUEST = 10;
+
+    /*
+     * This map holds all running and waiting requests by their my.openHAB request id
+     */
+    private final Map<Integer, ProxiedRequest> requests = new ConcurrentHashMap<Integer, ProxiedRequest>();
+
+    /*
+     * This queue holds the requests waiting to be sent, guarded by this
+     */
+    private final Deque<ProxiedRequest> queue = new ArrayDeque<ProxiedRequest>();
+
+    /*
+     * This variable holds the number of requests currently sent to openHAB, guarded by this
+     */
+    private int running = 0;
+
+    private volatile int maxRequests = DEFAULT_MAX_REQUESTS;
+
+    private volatile long requestTimeout = 0;
+
+    private final AtomicLong completedRequests = new AtomicLong();
+    private final AtomicLong cancelledRequests = new AtomicLong();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong queuedRequests = new AtomicLong();
+    private final AtomicLong totalLatency = new AtomicLong();
+    private final AtomicLong maxLatency = new AtomicLong();
+    private final AtomicLong totalQueueWait = new AtomicLong();
+    private final AtomicLong maxQueueWait = new AtomicLong();
+
+    /**
+     * Submits a request to openHAB. The request is sent right away if less than maxRequests
+     * requests are running, otherwise it waits until a slot is free.
+     *
+     * @param requestId my.openHAB request id
+     * @param request the request to openHAB
+     * @param listener the listener receiving the response, which has to call
+     *            {@link #complete(int, Response.CompleteListener)} with itself
+     * @return false if the request has been rejected because too many requests are waiting
+     */
+    public boolean submit(int requestId, Request request, Response.CompleteListener listener) {
+        ProxiedRequest proxiedRequest = new ProxiedRequest(requestId, request, listener);
+        synchronized (this) {
+            if (queue.size() >= maxRequests * QUEUED_REQUESTS_PER_RUNNING_REQUEST) {
+                rejectedRequests.incrementAndGet();
+                logger.warn("Rejecting request {}, {} requests are waiting", requestId, queue.size());
+                return false;
+            }
+            ProxiedRequest previous = requests.put(requestId, proxiedRequest);
+            if (previous != null) {
+                logger.warn("Request {} has been submitted twice, aborting the previous one", requestId);
+                release(previous);
+                previous.request.abort(new InterruptedException());
+            }
+            queue.add(proxiedRequest);
+            if (running >= maxRequests) {
+                queuedRequests.incrementAndGet();
+                logger.debug("Request {} is waiting, {} requests are running", requestId, running);
+            }
+        }
+        sendWaitingRequests();
+        return true;
+    }
+
+    /**
+     * Marks a request as completed and sends the next waiting request. Has to be
+     * called when the response of the request is complete.
+     *
+     * @param requestId my.openHAB request id
+     * @param listener the listener the request has been submitted with, a redirected
+     *            request completes with a different Jetty request
+     */
+    public void complete(int requestId, Response.CompleteListener listener) {
+        ProxiedRequest proxiedRequest;
+        synchronized (this) {
+            proxiedRequest = requests.get(requestId);
+            if (proxiedRequest == null || proxiedRequest.listener != listener) {
+                // the request has been cancelled or submitted again before
+                return;
+            }
+            requests.remove(requestId);
+            release(proxiedRequest);
+        }
+        long latency = System.currentTimeMillis() - proxiedRequest.startedAt;
+        completedRequests.incrementAndGet();
+        totalLatency.addAndGet(latency);
+        updateMax(maxLatency, latency);
+        logger.debug("Request {} completed after {}ms", requestId, latency);
+        sendWaitingRequests();
+    }
+
+    /**
+     * Cancels a request. A waiting request is dropped, a running request is aborted.
+     *
+     * @param requestId my.openHAB request id
+     * @return false if there is no such request
+     */
+    public boolean cancel(int requestId) {
+        ProxiedRequest proxiedRequest;
+        boolean started;
+        synchronized (this) {
+            proxiedRequest = requests.remove(requestId);
+            if (proxiedRequest == null) {
+                return false;
+            }
+            started = proxiedRequest.startedAt != 0;
+            if (started) {
+                release(proxiedRequest);
+            } else {
+                queue.remove(proxiedRequest);
+            }
+        }
+        cancelledRequests.incrementAndGet();
+        if (started) {
+            proxiedRequest.request.abort(new InterruptedException());
+            sendWaitingRequests();
+        }
+        return true;
+    }
+
+    /**
+     * Drops all waiting requests and aborts all running requests
+     */
+    public void clear() {
+        List<ProxiedRequest> started = new ArrayList<ProxiedRequest>();
+        synchronized (this) {
+            for (ProxiedRequest proxiedRequest : requests.values()) {
+                if (proxiedRequest.startedAt != 0) {
+                    started.add(proxiedRequest);
+                }
+            }
+            requests.clear();
+            queue.clear();
+            running = 0;
+        }
+        for (ProxiedRequest proxiedRequest : started) {
+            proxiedRequest.request.abort(new InterruptedException());
+        }
+    }
+
+    /*
+     * Frees the slot of a running request, must be called while holding the lock
+     */
+    private void release(ProxiedRequest proxiedRequest) {
+        if (proxiedRequest.startedAt != 0) {
+            running--;
+        } else {
+            queue.remove(proxiedRequest);
+        }
+    }
+
+    private void sendWaitingRequests() {
+        List<ProxiedRequest> toSend = new ArrayList<ProxiedRequest>();
+        synchronized (this) {
+            while (running < maxRequests && !queue.isEmpty()) {
+                ProxiedRequest proxiedRequest = queue.poll();
+                proxiedRequest.startedAt = System.currentTimeMillis();
+                running++;
+                toSend.add(proxiedRequest);
+            }
+        }
+        // requests are sent outside of the lock as Jetty may complete them right away
+        for (ProxiedRequest proxiedRequest : toSend) {
+            long queueWait = proxiedRequest.startedAt - proxiedRequest.submittedAt;
+            totalQueueWait.addAndGet(queueWait);
+            updateMax(maxQueueWait, queueWait);
+            long timeout = requestTimeout;
+            if (timeout > 0) {
+                // the time spent waiting counts towards the timeout
+                proxiedRequest.request.timeout(Math.max(1, timeout - queueWait), TimeUnit.MILLISECONDS);
+            }
+            proxiedRequest.request.send(proxiedRequest.listener);
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while ((current = max.get()) < value && !max.compareAndSet(current, value)) {
+        }
+    }
+
+    /**
+     * Set the maximum number of requests sent to openHAB at the same time
+     *
+     * @param maxRequests maximum number of running requests, at least 1
+     */
+    public void setMaxRequests(int maxRequests) {
+        this.maxRequests = Math.max(1, maxRequests);
+        sendWaitingRequests();
+    }
+
+    public int getMaxRequests() {
+        return maxRequests;
+    }
+
+    /**
+     * Set the time after which a request is aborted, including the time it waited
+     *
+     * @param requestTimeout timeout in milliseconds, 0 to let requests run without a time limit
+     */
+    public void setRequestTimeout(long requestTimeout) {
+        this.requestTimeout = Math.max(0, requestTimeout);
+    }
+
+    public long getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public synchronized int getRunningRequests() {
+        return running;
+    }
+
+    public synchronized int getWaitingRequests() {
+        return queue.size();
+    }
+
+    public long getCompletedRequests() {
+        return completedRequests.get();
+    }
+
+    public long getCancelledRequests() {
+        return cancelledRequests.get();
+    }
+
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * @return the number of requests which had to wait for a free slot
+     */
+    public long getQueuedRequests() {
+        return queuedRequests.get();
+    }
+
+    /**
+     * @return the average time in milliseconds from sending a request to openHAB until its response was complete
+     */
+    public long getAverageLatency() {
+        long completed = completedRequests.get();
+        return completed == 0 ? 0 : totalLatency.get() / completed;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency.get();
+    }
+
+    /**
+     * @return the average time in milliseconds a completed request waited before it was sent to openHAB
+     */
+    public long getAverageQueueWait() {
+        long completed = completedRequests.get();
+        return completed == 0 ? 0 : totalQueueWait.get() / completed;
+    }
+
+    public long getMaxQueueWait() {
+        return maxQueueWait.get();
+    }
+
+    @Override
+    public String toString() {
+        return "running=" + getRunningRequests() + ", waiting=" + getWaitingRequests() + ", completed="
+                + getCompletedRequests() + ", cancelled=" + getCancelledRequests() + ", rejected="
+                + getRejectedRequests() + ", queued=" + getQueuedRequests() + ", latency avg/max="
+                + getAverageLatency() + "/" + getMaxLatency() + "ms, queue wait avg/max=" + getAverageQueueWait()
+                + "/" + getMaxQueueWait() + "ms";
+    }
+
+    /*
+     * A request to openHAB together with its listener and timestamps
+     */
+    private static class ProxiedRequest {
+        private final int requestId;
+        private final Request request;
+        private final Response.CompleteListener listener;
+        private final long submittedAt = System.currentTimeMillis();
+        private long startedAt = 0;
+
+        ProxiedRequest(int requestId, Request request, Response.CompleteListener listener) {
+            this.requestId = requestId;
+            this.request = request;
+            this.listener = listener;
+        }
+
+        @Override
+        public String toString() {
+            return "request " + requestId;
+        }
+    }
+}
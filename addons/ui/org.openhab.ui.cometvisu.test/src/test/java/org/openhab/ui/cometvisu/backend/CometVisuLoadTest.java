@@ -0,0 +1,475 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.backend;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+
+import org.eclipse.smarthome.core.events.EventPublisher;
+import org.eclipse.smarthome.core.items.Item;
+import org.eclipse.smarthome.core.items.ItemNotFoundException;
+import org.eclipse.smarthome.core.items.ItemRegistry;
+import org.eclipse.smarthome.core.items.events.ItemCommandEvent;
+import org.eclipse.smarthome.core.library.items.NumberItem;
+import org.eclipse.smarthome.core.library.items.StringItem;
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.library.types.StringType;
+import org.eclipse.smarthome.core.persistence.FilterCriteria;
+import org.eclipse.smarthome.core.persistence.HistoricItem;
+import org.eclipse.smarthome.core.persistence.QueryablePersistenceService;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Load generator for the CometVisu backend. It connects a number of simulated
+ * SSE clients to the {@link ReadResource}, each subscribed to a random set of
+ * items of an in-memory item registry, changes the item states at a fixed
+ * rate and measures the time until the changes have been written to the
+ * clients. At the same time it sends write requests to the
+ * {@link WriteResource}, whose commands are applied to the items and pushed
+ * back to the clients as well, and requests chart series from the
+ * {@link ChartResource}.
+ * <p>
+ * The test only runs if the system property <code>cometvisu.loadtest</code>
+ * is <code>true</code> or a list of settings, e.g.
+ * <code>-Dcometvisu.loadtest=clients=200,subscriptions=50,updateRate=2000</code>.
+ * The available settings and their defaults are listed in {@link #settings}.
+ * The services the resources depend on are simulated by dynamic proxies, so
+ * that only the methods used by the resources have to be implemented.
+ *
+ * @since 2.0.0
+ */
+public class CometVisuLoadTest {
+
+    /** matches the states injected by the load test, which carry the time they were created */
+    static final Pattern STATE_PATTERN = Pattern.compile("\"([sw])\\d+@(\\d+)\"");
+
+    private final Map<String, Integer> settings = new LinkedHashMap<String, Integer>();
+
+    private final Map<String, Item> items = new ConcurrentHashMap<String, Item>();
+
+    private final AtomicLong writes = new AtomicLong();
+
+    private final LatencyHistogram updateLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LatencyHistogram chartLatency = new LatencyHistogram();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong chartErrors = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong peakHeap = new AtomicLong();
+
+    private ItemRegistry itemRegistry;
+    private QueryablePersistenceService persistenceService;
+    private EventPublisher eventPublisher;
+    private Request request;
+
+    private ReadResource readResource;
+    private WriteResource writeResource;
+    private ChartResource chartResource;
+
+    private volatile boolean running;
+
+    @Before
+    public void setUp() {
+        String property = System.getProperty("cometvisu.loadtest", "false");
+        assumeThat(property, is(not("false")));
+
+        settings.put("clients", 50);
+        settings.put("items", 200);
+        settings.put("subscriptions", 20);
+        settings.put("updateRate", 500);
+        settings.put("writeRate", 10);
+        settings.put("chartRate", 1);
+        settings.put("duration", 30);
+        if (!property.equals("true")) {
+            for (String setting : property.split(",")) {
+                String[] keyValue = setting.split("=");
+                String key = keyValue[0].trim();
+                assertThat("unknown setting '" + key + "'", settings.containsKey(key), is(true));
+                settings.put(key, Integer.valueOf(keyValue[1].trim()));
+            }
+        }
+
+        for (int i = 0; i < settings.get("items"); i++) {
+            items.put("LoadItem" + i, new StringItem("LoadItem" + i));
+        }
+        items.put("LoadChart", new NumberItem("LoadChart"));
+        createServices();
+
+        readResource = new ReadResource() {
+            @Override
+            protected EventOutput createEventOutput() {
+                return new RecordingEventOutput(events, updateLatency, writeLatency);
+            }
+        };
+        readResource.setItemRegistry(itemRegistry);
+        writeResource = new WriteResource();
+        writeResource.setItemRegistry(itemRegistry);
+        writeResource.setEventPublisher(eventPublisher);
+        chartResource = new ChartResource();
+        chartResource.setItemRegistry(itemRegistry);
+        chartResource.addPersistenceService(persistenceService);
+    }
+
+    private void createServices() {
+        itemRegistry = stub(ItemRegistry.class, new StubHandler() {
+            @Override
+            Object call(String method, Object[] args) throws Exception {
+                switch (method) {
+                    case "getItem":
+                        Item item = items.get(args[0]);
+                        if (item == null) {
+                            throw new ItemNotFoundException((String) args[0]);
+                        }
+                        return item;
+                    case "getItems":
+                        return new ArrayList<Item>(items.values());
+                    default:
+                        return null;
+                }
+            }
+        });
+
+        persistenceService = stub(QueryablePersistenceService.class, new StubHandler() {
+            @Override
+            Object call(String method, Object[] args) {
+                switch (method) {
+                    case "getName":
+                    case "getLabel":
+                        return "loadtest";
+                    case "query":
+                        return query((FilterCriteria) args[0]);
+                    default:
+                        return null;
+                }
+            }
+        });
+
+        eventPublisher = stub(EventPublisher.class, new StubHandler() {
+            @Override
+            Object call(String method, Object[] args) {
+                // apply the command like the autoupdate binding would do
+                if (method.equals("post") && args[0] instanceof ItemCommandEvent) {
+                    ItemCommandEvent event = (ItemCommandEvent) args[0];
+                    ((StringItem) items.get(event.getItemName())).setState((StringType) event.getItemCommand());
+                    writes.incrementAndGet();
+                }
+                return null;
+            }
+        });
+
+        request = stub(Request.class, new StubHandler() {
+            @Override
+            Object call(String method, Object[] args) {
+                // evaluatePreconditions: the response is never cached by the client
+                return null;
+            }
+        });
+    }
+
+    /**
+     * @return one value per minute of the requested range
+     */
+    private List<HistoricItem> query(final FilterCriteria filter) {
+        long end = filter.getEndDate() != null ? filter.getEndDate().getTime() : System.currentTimeMillis();
+        List<HistoricItem> result = new ArrayList<HistoricItem>();
+        for (long time = filter.getBeginDate().getTime(); time < end; time += 60000) {
+            final long timestamp = time;
+            result.add(stub(HistoricItem.class, new StubHandler() {
+                @Override
+                Object call(String method, Object[] args) {
+                    switch (method) {
+                        case "getName":
+                            return filter.getItemName();
+                        case "getState":
+                            return new DecimalType(Math.sin(timestamp / 3600000d));
+                        case "getTimestamp":
+                            return new Date(timestamp);
+                        default:
+                            return null;
+                    }
+                }
+            }));
+        }
+        return result;
+    }
+
+    @After
+    public void tearDown() {
+        running = false;
+        if (readResource != null) {
+            readResource.deactivate();
+        }
+        if (chartResource != null) {
+            chartResource.removePersistenceService(persistenceService);
+            chartResource.deactivate();
+        }
+    }
+
+    @Test
+    public void measurePushLatencyUnderLoad() throws Exception {
+        final Random random = new Random(42);
+        final List<String> itemNames = new ArrayList<String>();
+        for (String name : items.keySet()) {
+            if (name.startsWith("LoadItem")) {
+                itemNames.add(name);
+            }
+        }
+        Collections.sort(itemNames);
+        for (int i = 0; i < settings.get("clients"); i++) {
+            Collections.shuffle(itemNames, random);
+            readResource.getStates(
+                    new ArrayList<String>(itemNames.subList(0, Math.min(settings.get("subscriptions"), itemNames.size()))),
+                    0, 0, null);
+        }
+
+        System.gc();
+        long baseHeap = usedHeap();
+        running = true;
+        List<Thread> threads = new ArrayList<Thread>();
+        threads.add(startAtRate("update", settings.get("updateRate"), new RateAction() {
+            @Override
+            public void run(long seq) {
+                StringItem item = (StringItem) items.get(itemNames.get(random.nextInt(itemNames.size())));
+                item.setState(new StringType("s" + seq + "@" + System.nanoTime()));
+                updates.incrementAndGet();
+            }
+        }));
+        threads.add(startAtRate("write", settings.get("writeRate"), new RateAction() {
+            @Override
+            public void run(long seq) {
+                writeResource.setState(null, itemNames.get(random.nextInt(itemNames.size())),
+                        "w" + seq + "@" + System.nanoTime(), 0);
+            }
+        }));
+        threads.add(startAtRate("chart", settings.get("chartRate"), new RateAction() {
+            @Override
+            public void run(long seq) {
+                long start = System.nanoTime();
+                Response response = chartResource.getChartSeries(null, request, "loadtest:LoadChart", "AVERAGE",
+                        "end-1d", "now", 300);
+                chartLatency.record(System.nanoTime() - start);
+                if (response.getStatus() != 200) {
+                    chartErrors.incrementAndGet();
+                }
+            }
+        }));
+        threads.add(startAtRate("heap", 10, new RateAction() {
+            @Override
+            public void run(long seq) {
+                long used = usedHeap();
+                if (used > peakHeap.get()) {
+                    peakHeap.set(used);
+                }
+            }
+        }));
+        int duration = settings.get("duration");
+        Thread.sleep(TimeUnit.SECONDS.toMillis(duration));
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.println("CometVisu load test with " + settings);
+        System.out.println("  item updates:  " + updates.get() + " (" + updates.get() / duration + "/s)");
+        System.out.println("  writes:        " + writes.get() + " (" + writes.get() / duration + "/s)");
+        System.out.println("  events pushed: " + events.get() + " (" + events.get() / duration + "/s)");
+        System.out.println("  update push latency: " + updateLatency);
+        System.out.println("  write push latency:  " + writeLatency);
+        System.out.println("  chart latency:       " + chartLatency + ", " + chartErrors.get() + " errors");
+        System.out.println("  heap: " + (baseHeap >> 20) + " MB after connecting, " + (peakHeap.get() >> 20)
+                + " MB peak");
+
+        assertThat(updateLatency.getCount(), is(not(0L)));
+        assertThat(chartErrors.get(), is(0L));
+    }
+
+    /**
+     * calls the action with a sequence number <code>rate</code> times per
+     * second until the test stops
+     */
+    private Thread startAtRate(String name, final int rate, final RateAction action) {
+        Thread thread = new Thread("CometVisu-load-" + name) {
+            @Override
+            public void run() {
+                if (rate <= 0) {
+                    return;
+                }
+                long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+                long next = System.nanoTime();
+                long seq = 0;
+                while (running) {
+                    action.run(seq++);
+                    next += interval;
+                    long delay = next - System.nanoTime();
+                    if (delay > 0) {
+                        LockSupport.parkNanos(delay);
+                    }
+                }
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, StubHandler handler) {
+        return (T) Proxy.newProxyInstance(CometVisuLoadTest.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    /**
+     * an action which is called at a fixed rate
+     */
+    private interface RateAction {
+        void run(long seq);
+    }
+
+    /**
+     * Implements the methods of a simulated service by their name. The
+     * methods of {@link Object} are answered by identity.
+     */
+    private abstract static class StubHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    if (args != null && args.length == 1) {
+                        return proxy == args[0];
+                    }
+                    break;
+                case "hashCode":
+                    if (args == null) {
+                        return System.identityHashCode(proxy);
+                    }
+                    break;
+                case "toString":
+                    if (args == null) {
+                        return proxy.getClass().getInterfaces()[0].getSimpleName() + " stub";
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return call(method.getName(), args);
+        }
+
+        abstract Object call(String method, Object[] args) throws Exception;
+    }
+
+    /**
+     * Takes the place of the connection to a client and records the latency
+     * of the injected states it receives.
+     */
+    static class RecordingEventOutput extends EventOutput {
+        final AtomicLong events;
+        final LatencyHistogram updateLatency;
+        final LatencyHistogram writeLatency;
+
+        RecordingEventOutput(AtomicLong events, LatencyHistogram updateLatency, LatencyHistogram writeLatency) {
+            this.events = events;
+            this.updateLatency = updateLatency;
+            this.writeLatency = writeLatency;
+        }
+
+        @Override
+        public void write(OutboundEvent event) throws IOException {
+            long now = System.nanoTime();
+            events.incrementAndGet();
+            if (!(event.getData() instanceof byte[])) {
+                // the initial states
+                return;
+            }
+            Matcher matcher = STATE_PATTERN.matcher(new String((byte[]) event.getData(), StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                LatencyHistogram histogram = matcher.group(1).equals("s") ? updateLatency : writeLatency;
+                histogram.record(now - Long.parseLong(matcher.group(2)));
+            }
+        }
+    }
+
+    /**
+     * Counts latencies in buckets of 100 microseconds up to 10 seconds, so
+     * that the memory used does not depend on the duration of the test.
+     */
+    static class LatencyHistogram {
+        static final long BUCKET_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+        static final int BUCKETS = 100000;
+
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            buckets.incrementAndGet((int) Math.min(nanos / BUCKET_NANOS, BUCKETS - 1));
+            count.incrementAndGet();
+            long currentMax;
+            while ((currentMax = max.get()) < nanos && !max.compareAndSet(currentMax, nanos)) {
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        /**
+         * @return the upper bound of the bucket containing the percentile in milliseconds
+         */
+        double percentile(double percentile) {
+            long total = count.get();
+            long threshold = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= threshold && seen > 0) {
+                    return (i + 1) * BUCKET_NANOS / 1000000d;
+                }
+            }
+            return max.get() / 1000000d;
+        }
+
+        @Override
+        public String toString() {
+            return count.get() == 0 ? "no samples"
+                    : String.format("%d samples, p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms", count.get(),
+                            percentile(50), percentile(90), percentile(99), max.get() / 1000000d);
+        }
+    }
+}
@@ -20,16 +20,28 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.UriInfo;
 
 import org.eclipse.smarthome.core.items.GroupItem;
@@ -44,6 +56,9 @@ import org.eclipse.smarthome.core.persistence.PersistenceService;
 import org.eclipse.smarthome.core.persistence.QueryablePersistenceService;
 import org.eclipse.smarthome.io.rest.RESTResource;
 import org.openhab.ui.cometvisu.internal.Config;
+import org.openhab.ui.cometvisu.internal.chart.ChartCache;
+import org.openhab.ui.cometvisu.internal.chart.ChartCache.CachedSeries;
+import org.openhab.ui.cometvisu.internal.chart.SeriesDownsampler;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.core.FetchData;
 import org.rrd4j.core.FetchRequest;
@@ -80,11 +95,44 @@ public class ChartResource implements RESTResource {
 
     static protected Map<String, QueryablePersistenceService> persistenceServices = new HashMap<String, QueryablePersistenceService>();
 
+    /** the maximum number of rrd files which are read at the same time */
+    private static final int MAX_PARALLEL_FETCHES = 4;
+
+    /**
+     * the minimum time in milliseconds before a row is treated as final, rrd4j
+     * consolidates the values stored every minute only after that minute
+     */
+    private static final long MIN_CLOSED_MARGIN = 60 * 1000L;
+
+    private final ThreadPoolExecutor fetchExecutor;
+
+    private final ChartCache chartCache = new ChartCache();
+
     private ItemRegistry itemRegistry;
 
     @Context
     private UriInfo uriInfo;
 
+    public ChartResource() {
+        fetchExecutor = new ThreadPoolExecutor(MAX_PARALLEL_FETCHES, MAX_PARALLEL_FETCHES, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "CometVisu-chart-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        fetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    protected void deactivate() {
+        fetchExecutor.shutdownNow();
+        chartCache.clear();
+    }
+
     public void addPersistenceService(PersistenceService service) {
         if (service instanceof QueryablePersistenceService)
             persistenceServices.put(service.getName(), (QueryablePersistenceService) service);
@@ -92,6 +140,7 @@ public class ChartResource implements RESTResource {
 
     public void removePersistenceService(PersistenceService service) {
         persistenceServices.remove(service.getName());
+        chartCache.clear();
     }
 
     static public Map<String, QueryablePersistenceService> getPersistenceServices() {
@@ -108,7 +157,8 @@ public class ChartResource implements RESTResource {
 
     @GET
     @Produces({ MediaType.APPLICATION_JSON })
-    public Response getChartSeries(@Context HttpHeaders headers, @QueryParam("rrd") String itemName,
+    public Response getChartSeries(@Context HttpHeaders headers, @Context Request request,
+            @QueryParam("rrd") String itemName,
             @QueryParam("ds") String consFunction, @QueryParam("start") String start, @QueryParam("end") String end,
             @QueryParam("res") long resolution) {
         if (logger.isDebugEnabled())
@@ -120,11 +170,12 @@ public class ChartResource implements RESTResource {
 
         // read the start/end time as they are provided in the RRD-way, we use
         // the RRD4j to read them
+        // the range is aligned to the resolution, so that the time buckets
+        // of subsequent requests match and closed buckets can be cached
         long[] times = Util.getTimestamps(start, end);
-        Date startTime = new Date();
-        startTime.setTime(times[0] * 1000L);
-        Date endTime = new Date();
-        endTime.setTime(times[1] * 1000L);
+        long step = Math.max(resolution, 1) * 1000L;
+        long begin = (times[0] * 1000L / step) * step;
+        long finish = ((times[1] * 1000L + step - 1) / step) * step;
 
         if (itemName.endsWith(".rrd"))
             itemName = itemName.substring(0, itemName.length() - 4);
@@ -153,13 +204,14 @@ public class ChartResource implements RESTResource {
                     throw new IllegalArgumentException("No Persistence service found.");
                 }
             }
-            Object data = null;
-            if (persistenceService.getName().equals("rrd4j")) {
-                data = getRrdSeries(persistenceService, item, consilidationFunction, startTime, endTime, resolution);
-            } else {
-                data = getPersistenceSeries(persistenceService, item, startTime, endTime, resolution);
+            List<Object> data = getCachedSeries(persistenceService, item, consilidationFunction, begin, finish,
+                    resolution);
+            EntityTag eTag = new EntityTag(computeETag(data));
+            ResponseBuilder notModified = request.evaluatePreconditions(eTag);
+            if (notModified != null) {
+                return notModified.build();
             }
-            return Response.ok(data, responseType).build();
+            return Response.ok(data, responseType).tag(eTag).build();
         } catch (ItemNotFoundException e1) {
             logger.error("Item '{}' not found error while requesting series data.", itemName);
 
@@ -167,9 +219,117 @@ public class ChartResource implements RESTResource {
         return Response.serverError().build();
     }
 
+    /**
+     * returns the series data, taking the rows of closed time buckets from the
+     * cache and querying only the remaining time range
+     */
+    private List<Object> getCachedSeries(QueryablePersistenceService persistenceService, Item item,
+            ConsolFun consilidationFunction, long begin, long finish, long resolution) {
+        long step = Math.max(resolution, 1) * 1000L;
+        // a bucket is closed once the next one has started, keep one more bucket but at least the
+        // storage step of rrd4j as margin, the requested resolution may be finer than the stored one
+        long closedUntil = Math.min((System.currentTimeMillis() / step) * step - Math.max(step, MIN_CLOSED_MARGIN),
+                finish);
+        String key = persistenceService.getName() + ":" + item.getName() + ":" + consilidationFunction + ":"
+                + resolution;
+
+        ArrayList<Object> data = new ArrayList<Object>();
+        long queryStart = begin;
+        CachedSeries cached = chartCache.get(key, begin);
+        if (cached != null && cached.getClosedUntil() > begin) {
+            for (Object[] row : cached.getRows()) {
+                long time = ((Number) row[0]).longValue();
+                if (time >= begin && time < finish && time < cached.getClosedUntil()) {
+                    data.add(row);
+                }
+            }
+            queryStart = cached.getClosedUntil();
+            logger.debug("using {} cached rows of '{}' until '{}'", data.size(), key, new Date(queryStart));
+        }
+
+        if (queryStart < finish) {
+            Date timeBegin = new Date(queryStart);
+            Date timeEnd = new Date(finish);
+            Object series;
+            if (persistenceService.getName().equals("rrd4j")) {
+                series = getRrdSeries(persistenceService, item, consilidationFunction, timeBegin, timeEnd, resolution);
+            } else {
+                series = getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
+            }
+            for (Object row : (List<?>) series) {
+                if (((Number) ((Object[]) row)[0]).longValue() >= queryStart) {
+                    data.add(row);
+                }
+            }
+        }
+
+        if (closedUntil > begin) {
+            List<Object[]> closedRows = new ArrayList<Object[]>();
+            // rows at the end without any value may not have been consolidated yet, they are queried again
+            int lastRowWithValue = -1;
+            for (Object row : data) {
+                if (((Number) ((Object[]) row)[0]).longValue() >= closedUntil) {
+                    break;
+                }
+                closedRows.add((Object[]) row);
+                if (hasValue((Object[]) row)) {
+                    lastRowWithValue = closedRows.size() - 1;
+                }
+            }
+            if (lastRowWithValue < closedRows.size() - 1) {
+                closedUntil = ((Number) closedRows.get(lastRowWithValue + 1)[0]).longValue();
+                closedRows = closedRows.subList(0, lastRowWithValue + 1);
+            }
+            if (closedUntil > begin) {
+                chartCache.put(key, begin, closedUntil, new ArrayList<Object[]>(closedRows));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * @return true if at least one value of the row is not null
+     */
+    private static boolean hasValue(Object[] row) {
+        for (Object value : (List<?>) row[1]) {
+            if (!"null".equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * computes an entity tag from the content of the series
+     */
+    private String computeETag(List<Object> data) {
+        long hash = 17;
+        for (Object row : data) {
+            Object[] entry = (Object[]) row;
+            hash = 31 * hash + ((Number) entry[0]).longValue();
+            for (Object value : (List<?>) entry[1]) {
+                hash = 31 * hash + String.valueOf(value).hashCode();
+            }
+        }
+        return Long.toHexString(hash) + "-" + Integer.toHexString(data.size());
+    }
+
+    /**
+     * returns the series data of a persistence service as an array of
+     * [[timestamp,data]], downsampled to about one point per resolution
+     * interval
+     *
+     * @param persistenceService
+     * @param item
+     * @param timeBegin
+     * @param timeEnd
+     * @param resolution
+     *            - the requested resolution in seconds, 0 to get all points
+     * @return
+     */
     public Object getPersistenceSeries(QueryablePersistenceService persistenceService, Item item, Date timeBegin,
             Date timeEnd, long resolution) {
-        Map<Long, ArrayList<String>> data = new HashMap<Long, ArrayList<String>>();
+        final ArrayList<Object> rrd = new ArrayList<Object>();
 
         // Define the data filter
         FilterCriteria filter = new FilterCriteria();
@@ -178,6 +338,17 @@ public class ChartResource implements RESTResource {
         filter.setItemName(item.getName());
         filter.setOrdering(Ordering.ASCENDING);
 
+        // the points are selected while iterating through the ordered results
+        SeriesDownsampler downsampler = new SeriesDownsampler(timeBegin.getTime(), resolution * 1000,
+                new SeriesDownsampler.PointConsumer() {
+                    @Override
+                    public void point(long time, double value) {
+                        ArrayList<String> vals = new ArrayList<String>(1);
+                        vals.add(formatDouble(value, "null", true));
+                        rrd.add(new Object[] { time, vals });
+                    }
+                });
+
         // Get the data from the persistence store
         Iterable<HistoricItem> result = persistenceService.query(filter);
         Iterator<HistoricItem> it = result.iterator();
@@ -189,18 +360,20 @@ public class ChartResource implements RESTResource {
             HistoricItem historicItem = it.next();
             org.eclipse.smarthome.core.types.State state = historicItem.getState();
             if (state instanceof DecimalType) {
-                ArrayList<String> vals = new ArrayList<String>();
-                vals.add(formatDouble(((DecimalType) state).doubleValue(), "null", true));
-                data.put(historicItem.getTimestamp().getTime(), vals);
+                downsampler.add(historicItem.getTimestamp().getTime(), ((DecimalType) state).doubleValue());
             }
         }
-        logger.debug("'{}' querying item '{}' from '{}' to '{}' => '{}' results", persistenceService.getName(),
-                filter.getItemName(), filter.getBeginDate(), filter.getEndDate(), dataCounter);
-        return convertToRrd(data);
+        downsampler.finish();
+        logger.debug("'{}' querying item '{}' from '{}' to '{}' => '{}' results, '{}' points",
+                persistenceService.getName(), filter.getItemName(), filter.getBeginDate(), filter.getEndDate(),
+                dataCounter, rrd.size());
+        return rrd;
     }
 
     /**
-     * returns a rrd series data, an array of [[timestamp,data1,data2,...]]
+     * returns a rrd series data, an array of [[timestamp,data1,data2,...]].
+     * The rrd files of the members of a group are read in parallel and merged
+     * in order of their timestamps.
      *
      * @param persistenceService
      * @param item
@@ -211,74 +384,150 @@ public class ChartResource implements RESTResource {
      * @return
      */
     public Object getRrdSeries(QueryablePersistenceService persistenceService, Item item,
-            ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution) {
-        Map<Long, ArrayList<String>> data = new TreeMap<Long, ArrayList<String>>();
-        try {
-            List<String> itemNames = new ArrayList<String>();
+            final ConsolFun consilidationFunction, final Date timeBegin, final Date timeEnd, final long resolution) {
+        List<String> itemNames = new ArrayList<String>();
 
-            if (item instanceof GroupItem) {
-                GroupItem groupItem = (GroupItem) item;
-                for (Item member : groupItem.getMembers()) {
-                    itemNames.add(member.getName());
-                }
-            } else {
-                itemNames.add(item.getName());
-            }
-            for (String itemName : itemNames) {
-                addRrdData(data, itemName, consilidationFunction, timeBegin, timeEnd, resolution);
+        if (item instanceof GroupItem) {
+            GroupItem groupItem = (GroupItem) item;
+            for (Item member : groupItem.getMembers()) {
+                itemNames.add(member.getName());
             }
+        } else {
+            itemNames.add(item.getName());
+        }
 
-        } catch (FileNotFoundException e) {
-            // rrd file does not exist, fallback to generic persistance service
-            logger.debug("no rrd file found '{}'", (RRD_FOLDER + File.separator + item.getName() + ".rrd"));
-            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
-        } catch (Exception e) {
+        List<Future<RrdSeries>> futures = new ArrayList<Future<RrdSeries>>();
+        try {
+            for (final String itemName : itemNames) {
+                futures.add(fetchExecutor.submit(new Callable<RrdSeries>() {
+                    @Override
+                    public RrdSeries call() throws IOException {
+                        return fetchRrdData(itemName, consilidationFunction, timeBegin, timeEnd, resolution);
+                    }
+                }));
+            }
+            List<RrdSeries> series = new ArrayList<RrdSeries>(futures.size());
+            for (Future<RrdSeries> future : futures) {
+                series.add(future.get());
+            }
+            return mergeRrdData(series);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FileNotFoundException) {
+                // rrd file does not exist, fallback to generic persistance service
+                logger.debug("no rrd file found '{}'", (RRD_FOLDER + File.separator + item.getName() + ".rrd"));
+            } else {
+                logger.error(e.getCause().getLocalizedMessage() + ": fallback to generic persistance service");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("interrupted while reading rrd files: fallback to generic persistance service");
+        } catch (RejectedExecutionException e) {
+            logger.error("cannot read rrd files: fallback to generic persistance service");
+        } catch (RuntimeException e) {
             logger.error(e.getLocalizedMessage() + ": fallback to generic persistance service");
-            return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
+        } finally {
+            for (Future<RrdSeries> future : futures) {
+                future.cancel(true);
+            }
         }
-        return convertToRrd(data);
+        return getPersistenceSeries(persistenceService, item, timeBegin, timeEnd, resolution);
     }
 
-    private ArrayList<Object> convertToRrd(Map<Long, ArrayList<String>> data) {
+    /**
+     * merges the rrd series of several items by a k-way merge of their
+     * ordered timestamps. The values of all series with the same timestamp
+     * are combined in one row in the order of the series.
+     */
+    private ArrayList<Object> mergeRrdData(List<RrdSeries> series) {
         ArrayList<Object> rrd = new ArrayList<Object>();
-        for (Long time : data.keySet()) {
-            Object[] entry = new Object[2];
-            entry[0] = time;
-            entry[1] = data.get(time);
-            rrd.add(entry);
+        PriorityQueue<RrdCursor> queue = new PriorityQueue<RrdCursor>(Math.max(series.size(), 1));
+        for (int i = 0; i < series.size(); i++) {
+            if (series.get(i).timestamps.length > 0) {
+                queue.add(new RrdCursor(i, series.get(i)));
+            }
+        }
+        while (!queue.isEmpty()) {
+            long time = queue.peek().getTime();
+            ArrayList<String> vals = new ArrayList<String>();
+            while (!queue.isEmpty() && queue.peek().getTime() == time) {
+                RrdCursor cursor = queue.poll();
+                cursor.addValues(vals);
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            // change to milliseconds
+            rrd.add(new Object[] { time * 1000, vals });
         }
         return rrd;
     }
 
-    private Map<Long, ArrayList<String>> addRrdData(Map<Long, ArrayList<String>> data, String itemName,
-            ConsolFun consilidationFunction, Date timeBegin, Date timeEnd, long resolution) throws IOException {
+    private RrdSeries fetchRrdData(String itemName, ConsolFun consilidationFunction, Date timeBegin, Date timeEnd,
+            long resolution) throws IOException {
         RrdDb rrdDb = new RrdDb(RRD_FOLDER + File.separator + itemName + ".rrd");
-        FetchRequest fetchRequest = rrdDb.createFetchRequest(consilidationFunction, Util.getTimestamp(timeBegin),
-                Util.getTimestamp(timeEnd), resolution);
-        FetchData fetchData = fetchRequest.fetchData();
-        // logger.info(fetchData.toString());
-        long[] timestamps = fetchData.getTimestamps();
-        double[][] values = fetchData.getValues();
-
-        logger.debug("RRD fetch returned '{}' rows and '{}' columns", fetchData.getRowCount(),
-                fetchData.getColumnCount());
-
-        for (int row = 0; row < fetchData.getRowCount(); row++) {
-            // change to microseconds
-            long time = timestamps[row] * 1000;
-
-            if (!data.containsKey(time)) {
-                data.put(time, new ArrayList<String>());
-            }
-            ArrayList<String> vals = data.get(time);
-            int indexOffset = vals.size();
-            for (int dsIndex = 0; dsIndex < fetchData.getColumnCount(); dsIndex++) {
-                vals.add(dsIndex + indexOffset, formatDouble(values[dsIndex][row], "null", true));
+        try {
+            FetchRequest fetchRequest = rrdDb.createFetchRequest(consilidationFunction, Util.getTimestamp(timeBegin),
+                    Util.getTimestamp(timeEnd), resolution);
+            FetchData fetchData = fetchRequest.fetchData();
+
+            logger.debug("RRD fetch returned '{}' rows and '{}' columns", fetchData.getRowCount(),
+                    fetchData.getColumnCount());
+
+            return new RrdSeries(fetchData.getTimestamps(), fetchData.getValues());
+        } finally {
+            rrdDb.close();
+        }
+    }
+
+    /**
+     * the rows fetched from a rrd file
+     */
+    private static class RrdSeries {
+        final long[] timestamps;
+        final double[][] values;
+
+        RrdSeries(long[] timestamps, double[][] values) {
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+    }
+
+    /**
+     * position in a {@link RrdSeries} during the merge
+     */
+    private static class RrdCursor implements Comparable<RrdCursor> {
+        final int index;
+        final RrdSeries series;
+        int row = 0;
+
+        RrdCursor(int index, RrdSeries series) {
+            this.index = index;
+            this.series = series;
+        }
+
+        long getTime() {
+            return series.timestamps[row];
+        }
+
+        void addValues(List<String> vals) {
+            for (int dsIndex = 0; dsIndex < series.values.length; dsIndex++) {
+                vals.add(formatDouble(series.values[dsIndex][row], "null", true));
             }
         }
-        rrdDb.close();
 
-        return data;
+        boolean next() {
+            return ++row < series.timestamps.length;
+        }
+
+        @Override
+        public int compareTo(RrdCursor other) {
+            long time = getTime();
+            long otherTime = other.getTime();
+            if (time != otherTime) {
+                return time < otherTime ? -1 : 1;
+            }
+            return index - other.index;
+        }
     }
 
     static String formatDouble(double x, String nanString, boolean forceExponents) {
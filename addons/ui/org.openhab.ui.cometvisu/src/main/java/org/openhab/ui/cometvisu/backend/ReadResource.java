@@ -11,19 +11,21 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
 import org.eclipse.smarthome.core.items.GenericItem;
@@ -34,11 +36,19 @@ import org.eclipse.smarthome.core.items.ItemRegistry;
 import org.eclipse.smarthome.core.types.State;
 import org.eclipse.smarthome.io.rest.RESTResource;
 import org.glassfish.jersey.media.sse.EventOutput;
-import org.glassfish.jersey.media.sse.SseBroadcaster;
+import org.glassfish.jersey.media.sse.OutboundEvent;
 import org.glassfish.jersey.media.sse.SseFeature;
+import org.openhab.ui.cometvisu.backend.beans.ConnectionStatsBean;
+import org.openhab.ui.cometvisu.backend.beans.SseStatsBean;
 import org.openhab.ui.cometvisu.backend.beans.StateBean;
 import org.openhab.ui.cometvisu.internal.Config;
+import org.openhab.ui.cometvisu.internal.StateBeanMessageBodyWriter;
 import org.openhab.ui.cometvisu.internal.listeners.StateEventListener;
+import org.openhab.ui.cometvisu.internal.sse.SseClient;
+import org.openhab.ui.cometvisu.internal.sse.SseDispatcher;
+import org.openhab.ui.cometvisu.internal.sse.StateBeanBatcher;
+import org.openhab.ui.cometvisu.internal.sse.StateReplayBuffer;
+import org.openhab.ui.cometvisu.internal.sse.SubscriptionIndex;
 import org.openhab.ui.cometvisu.internal.util.SseUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,17 +64,21 @@ import org.slf4j.LoggerFactory;
 public class ReadResource implements EventBroadcaster, RESTResource {
     private static final Logger logger = LoggerFactory.getLogger(ReadResource.class);
 
-    private SseBroadcaster broadcaster = new SseBroadcaster();
+    private final SubscriptionIndex subscriptions = new SubscriptionIndex();
 
-    private final ExecutorService executorService;
+    /** the number of state updates kept for reconnecting clients */
+    private static final int REPLAY_BUFFER_SIZE = 1000;
+
+    private final StateBeanBatcher batcher;
+
+    private final SseDispatcher dispatcher;
+
+    private final StateReplayBuffer replayBuffer = new StateReplayBuffer(REPLAY_BUFFER_SIZE);
 
     private ItemRegistry itemRegistry;
 
     private StateEventListener stateEventListener;
 
-    private List<String> itemNames = new ArrayList<String>();
-    private Map<Item, Map<String, Class<? extends State>>> items = new HashMap<Item, Map<String, Class<? extends State>>>();
-
     @Context
     private UriInfo uriInfo;
 
@@ -77,11 +91,27 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     private Collection<ItemFactory> itemFactories = new CopyOnWriteArrayList<ItemFactory>();
 
     public ReadResource() {
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.batcher = new StateBeanBatcher(new StateBeanBatcher.FlushHandler() {
+            @Override
+            public void flush(List<StateBean> states) {
+                sendStates(states);
+            }
+        });
+        this.dispatcher = new SseDispatcher(new SseDispatcher.ClosedHandler() {
+            @Override
+            public void closed(SseClient client) {
+                subscriptions.remove(client);
+            }
+        });
         this.stateEventListener = new StateEventListener();
         this.stateEventListener.setEventBroadcaster(this);
     }
 
+    protected void deactivate() {
+        batcher.shutdown();
+        dispatcher.shutdown();
+    }
+
     protected void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
     }
@@ -99,10 +129,19 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     }
 
     /**
-     * Subscribes the connecting client to the stream of events filtered by the
-     * given eventFilter.
+     * Subscribes the connecting client to the state changes of the requested
+     * items. Every connection has its own subscriptions, so that a client only
+     * receives the updates of the items it has requested.
+     * A reconnecting client which sends the id of the last event it has
+     * received (either as index or as Last-Event-ID header) is only sent the
+     * updates it has missed, as long as they are still available.
      *
-     * @param eventFilter
+     * @param itemNames
+     *            - the requested CometVisu addresses
+     * @param index
+     *            - the id of the last event the client has received
+     * @param lastEventId
+     *            - the id of the last event the client has received
      * @return {@link EventOutput} object associated with the incoming
      *         connection.
      * @throws IOException
@@ -111,70 +150,117 @@ public class ReadResource implements EventBroadcaster, RESTResource {
     @GET
     @Produces(SseFeature.SERVER_SENT_EVENTS)
     public Object getStates(@QueryParam("a") List<String> itemNames, @QueryParam("i") long index,
-            @QueryParam("t") long time) throws IOException, InterruptedException {
-        final EventOutput eventOutput = new EventOutput();
-
-        this.itemNames = itemNames;
-
-        broadcaster.add(eventOutput);
-
-        // get all requested items and send their states to the client
-        items = new HashMap<Item, Map<String, Class<? extends State>>>();
-        // send the current states of all items to the client
-        if (this.itemRegistry != null) {
-            List<StateBean> states = new ArrayList<StateBean>();
-            for (String cvItemName : itemNames) {
-                try {
-                    String[] parts = cvItemName.split(":");
-                    String ohItemName = cvItemName;
-                    Class<? extends State> stateClass = null;
-                    if (parts.length == 2) {
-                        String classPrefix = parts[0].toLowerCase();
-                        if (Config.itemTypeMapper.containsKey(classPrefix)) {
-                            stateClass = Config.itemTypeMapper.get(classPrefix);
-                            classPrefix += ":";
-                        } else {
-                            logger.debug("no type found for '{}'", classPrefix);
-                            classPrefix = "";
+            @QueryParam("t") long time, @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER) String lastEventId)
+                    throws IOException, InterruptedException {
+        final EventOutput eventOutput = createEventOutput();
+
+        // openHAB item name -> (CometVisu address -> requested state type)
+        Map<String, Map<String, Class<? extends State>>> clientItems = new HashMap<String, Map<String, Class<? extends State>>>();
+        for (String cvItemName : itemNames) {
+            String[] parts = cvItemName.split(":");
+            String ohItemName = cvItemName;
+            Class<? extends State> stateClass = null;
+            if (parts.length == 2) {
+                String classPrefix = parts[0].toLowerCase();
+                if (Config.itemTypeMapper.containsKey(classPrefix)) {
+                    stateClass = Config.itemTypeMapper.get(classPrefix);
+                } else {
+                    logger.debug("no type found for '{}'", classPrefix);
+                }
+                ohItemName = parts[1];
+            }
+            if (!clientItems.containsKey(ohItemName)) {
+                clientItems.put(ohItemName, new HashMap<String, Class<? extends State>>());
+            }
+            clientItems.get(ohItemName).put(cvItemName, stateClass);
+        }
+        SseClient client = new SseClient(eventOutput, clientItems);
+
+        // listen to state changes of the requested items, updates sent from now on
+        // are received through the subscription
+        subscriptions.add(client);
+        registerItems(clientItems.keySet());
+
+        long lastReceived = index;
+        if (lastEventId != null) {
+            try {
+                lastReceived = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                logger.debug("ignoring invalid Last-Event-ID '{}'", lastEventId);
+            }
+        }
+        // the first event is built and queued while holding the lock sendStates adds batches with,
+        // so no batch can be queued in between and be overtaken by older states
+        synchronized (replayBuffer) {
+            long sequence = replayBuffer.getLastSequence();
+            List<StateBean> missed = null;
+            if (lastReceived > 0) {
+                missed = replayBuffer.getSince(lastReceived, client.getAddresses());
+            }
+
+            if (missed != null) {
+                // resume the stream with the missed updates only
+                logger.debug("resuming stream after event {} with {} missed item states", lastReceived, missed.size());
+                if (!missed.isEmpty()) {
+                    dispatcher.dispatch(client, SseUtil.buildEvent(missed, sequence));
+                }
+            } else if (this.itemRegistry != null) {
+                // send the current states of all requested items to the client
+                List<StateBean> states = new ArrayList<StateBean>();
+                for (Map.Entry<String, Map<String, Class<? extends State>>> entry : clientItems.entrySet()) {
+                    try {
+                        Item item = this.itemRegistry.getItem(entry.getKey());
+                        for (Map.Entry<String, Class<? extends State>> address : entry.getValue().entrySet()) {
+                            StateBean itemState = new StateBean();
+                            itemState.name = address.getKey();
+                            Class<? extends State> stateClass = address.getValue();
+                            if (stateClass != null) {
+                                itemState.state = item.getStateAs(stateClass).toString();
+                                logger.trace("get state of '{}' as '{}' == '{}'", item, stateClass, itemState.state);
+                            } else {
+                                itemState.state = item.getState().toString();
+                            }
+                            states.add(itemState);
                         }
-                        ohItemName = parts[1];
+                    } catch (ItemNotFoundException e) {
+                        logger.error(e.getLocalizedMessage());
                     }
-                    Item item = this.itemRegistry.getItem(ohItemName);
-                    if (!items.containsKey(item)) {
-                        items.put(item, new HashMap<String, Class<? extends State>>());
-                    }
-                    items.get(item).put(cvItemName, stateClass);
-                    StateBean itemState = new StateBean();
-                    itemState.name = cvItemName;
-
-                    if (stateClass != null) {
-                        itemState.state = item.getStateAs(stateClass).toString();
-                        logger.trace("get state of '{}' as '{}' == '{}'", item, stateClass, itemState.state);
-                    } else {
-                        itemState.state = item.getState().toString();
-                    }
-                    states.add(itemState);
-                } catch (ItemNotFoundException e) {
-                    logger.error(e.getLocalizedMessage());
                 }
+                logger.debug("initially sending " + states.size() + "/" + itemNames.size() + " item states");
+                dispatcher.dispatch(client, SseUtil.buildEvent(states, sequence));
             }
-            logger.debug("initially broadcasting " + states.size() + "/" + itemNames.size() + " item states");
-            broadcaster.broadcast(SseUtil.buildEvent(states));
         }
-        // listen to state changes of the requested items
-        registerItems();
 
         return eventOutput;
     }
 
+    /**
+     * @return the output the events of a new connection are written to
+     */
+    protected EventOutput createEventOutput() {
+        return new EventOutput();
+    }
+
     /**
      * listen for state changes from the requested items
      */
     @Override
     public void registerItems() {
-        for (Item item : items.keySet()) {
-            if (item instanceof GenericItem) {
-                ((GenericItem) item).addStateChangeListener(stateEventListener);
+        registerItems(subscriptions.getItemNames());
+    }
+
+    private void registerItems(Collection<String> ohItemNames) {
+        if (this.itemRegistry == null) {
+            return;
+        }
+        for (String ohItemName : ohItemNames) {
+            try {
+                Item item = this.itemRegistry.getItem(ohItemName);
+                if (item instanceof GenericItem) {
+                    ((GenericItem) item).addStateChangeListener(stateEventListener);
+                }
+            } catch (ItemNotFoundException e) {
+                logger.debug("requested item '{}' does not exist (yet)", ohItemName);
             }
         }
     }
@@ -188,52 +274,115 @@ public class ReadResource implements EventBroadcaster, RESTResource {
      */
     @Override
     public void registerItem(Item item) {
-        if (item == null || items.containsKey(item) || !itemNames.contains(item.getName()))
+        if (item == null || !subscriptions.isSubscribed(item.getName())) {
             return;
+        }
         if (item instanceof GenericItem) {
             ((GenericItem) item).addStateChangeListener(stateEventListener);
         }
     }
 
     /**
-     * listens to state changes of the given item, if it is part of the
-     * requested items
+     * stops listening to state changes of the given item
      *
      * @param item
-     *            - the new item, that should be listened to
+     *            - the item, that should not be listened to anymore
      */
     @Override
     public void unregisterItem(Item item) {
-        if (item == null || items.containsKey(item) || !itemNames.contains(item.getName()))
-            return;
         if (item instanceof GenericItem) {
             ((GenericItem) item).removeStateChangeListener(stateEventListener);
-            items.remove(item);
         }
     }
 
     /**
-     * Broadcasts an event described by the given parameters to all currently
-     * listening clients.
+     * Sends an event to all clients which have subscribed to it. State
+     * updates ({@link StateBean}) are collected for a short time and sent to
+     * the subscribers of their addresses as one message, any other event is
+     * sent to all clients.
      *
-     * @param item
-     *            - the item which has changed
      * @param eventObject
      *            - bean that can be converted to a JSON object.
      */
     @Override
     public void broadcastEvent(final Object eventObject) {
-        executorService.execute(new Runnable() {
+        if (eventObject instanceof StateBean) {
+            batcher.add((StateBean) eventObject);
+            return;
+        }
+        batcher.execute(new Runnable() {
 
             @Override
             public void run() {
-                broadcaster.broadcast(SseUtil.buildEvent(eventObject));
+                Collection<SseClient> clients = subscriptions.getClients();
+                if (clients.isEmpty()) {
+                    return;
+                }
+                OutboundEvent event = SseUtil.buildEvent(eventObject);
+                for (SseClient client : clients) {
+                    dispatcher.dispatch(client, event);
+                }
             }
         });
     }
 
+    /**
+     * queues the states of the addresses every client has subscribed to for
+     * delivery. Every state is serialized once, the clients receive the states
+     * queued since their last message in one message.
+     */
+    private void sendStates(List<StateBean> states) {
+        synchronized (replayBuffer) {
+            // queued under the lock, see getStates
+            long sequence = replayBuffer.add(states);
+            Map<SseClient, Map<String, String>> clientStates = new LinkedHashMap<SseClient, Map<String, String>>();
+            for (StateBean state : states) {
+                Collection<SseClient> subscribers = subscriptions.getSubscribers(state.name);
+                if (subscribers.isEmpty()) {
+                    continue;
+                }
+                String serialized = StateBeanMessageBodyWriter.serializeState(state);
+                for (SseClient client : subscribers) {
+                    Map<String, String> map = clientStates.get(client);
+                    if (map == null) {
+                        map = new LinkedHashMap<String, String>();
+                        clientStates.put(client, map);
+                    }
+                    map.put(state.name, serialized);
+                }
+            }
+            for (Map.Entry<SseClient, Map<String, String>> entry : clientStates.entrySet()) {
+                dispatcher.dispatchStates(entry.getKey(), entry.getValue(), sequence);
+            }
+        }
+    }
+
+    /**
+     * reports the queue depth and the number of sent, coalesced and dropped
+     * events of every connection
+     */
+    @GET
+    @Path("stats")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response getStats() {
+        SseStatsBean bean = new SseStatsBean();
+        bean.droppedClients = dispatcher.getDroppedClients();
+        bean.queuedClients = dispatcher.getQueuedClients();
+        bean.stalledClients = dispatcher.getStalledClients();
+        for (SseClient client : subscriptions.getClients()) {
+            ConnectionStatsBean connection = new ConnectionStatsBean();
+            connection.addresses = client.getAddresses().size();
+            connection.queueDepth = client.getQueueDepth();
+            connection.sent = client.getSentEvents();
+            connection.coalesced = client.getCoalescedStates();
+            connection.dropped = client.getDroppedEvents();
+            bean.connections.add(connection);
+        }
+        return Response.ok(bean, MediaType.APPLICATION_JSON).build();
+    }
+
     @Override
     public Map<String, Class<? extends State>> getClientItems(Item item) {
-        return items.get(item);
+        return subscriptions.getClientItems(item.getName());
     }
 }
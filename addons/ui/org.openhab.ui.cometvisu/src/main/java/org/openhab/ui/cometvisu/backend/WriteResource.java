@@ -7,6 +7,11 @@
  */
 package org.openhab.ui.cometvisu.backend;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -17,6 +22,7 @@ import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
 
+import org.eclipse.smarthome.core.events.Event;
 import org.eclipse.smarthome.core.events.EventPublisher;
 import org.eclipse.smarthome.core.items.Item;
 import org.eclipse.smarthome.core.items.ItemNotFoundException;
@@ -25,7 +31,9 @@ import org.eclipse.smarthome.core.items.events.ItemEventFactory;
 import org.eclipse.smarthome.core.types.Command;
 import org.eclipse.smarthome.core.types.TypeParser;
 import org.eclipse.smarthome.io.rest.RESTResource;
+import org.openhab.ui.cometvisu.backend.beans.BatchSuccessBean;
 import org.openhab.ui.cometvisu.backend.beans.SuccessBean;
+import org.openhab.ui.cometvisu.backend.beans.WriteResultBean;
 import org.openhab.ui.cometvisu.internal.Config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,6 +80,70 @@ public class WriteResource implements RESTResource {
         }
     }
 
+    /**
+     * writes the values <code>v</code> to the addresses <code>a</code>, which
+     * are paired by their position. All values are parsed before the commands
+     * are posted, and every value is parsed only once per set of accepted
+     * command types.
+     */
+    @GET
+    @Path("batch")
+    @Produces({ MediaType.APPLICATION_JSON })
+    public Response setStates(@Context HttpHeaders headers, @QueryParam("a") List<String> itemNames,
+            @QueryParam("v") List<String> values, @QueryParam("ts") long timestamp) {
+        if (logger.isDebugEnabled())
+            logger.debug("Received CV batch write request at '{}' for items '{}' with values '{}'.",
+                    uriInfo.getPath(), itemNames, values);
+        if (itemNames.size() != values.size()) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        BatchSuccessBean bean = new BatchSuccessBean();
+        bean.success = 1;
+        List<Event> events = new ArrayList<Event>(itemNames.size());
+        Map<List<Class<? extends Command>>, Map<String, Command>> parsedCommands = new HashMap<List<Class<? extends Command>>, Map<String, Command>>();
+        for (int i = 0; i < itemNames.size(); i++) {
+            WriteResultBean result = new WriteResultBean();
+            result.address = itemNames.get(i);
+            try {
+                Item item = itemRegistry.getItem(itemNames.get(i));
+                Command command = parseCommand(item, values.get(i), parsedCommands);
+                if (command != null) {
+                    events.add(ItemEventFactory.createCommandEvent(item.getName(), command));
+                    result.success = 1;
+                } else {
+                    result.error = "invalid value '" + values.get(i) + "'";
+                }
+            } catch (ItemNotFoundException e) {
+                logger.error(e.getLocalizedMessage());
+                result.error = "item not found";
+            }
+            if (result.success == 0) {
+                bean.success = 0;
+            }
+            bean.results.add(result);
+        }
+        for (Event event : events) {
+            eventPublisher.post(event);
+        }
+        return Response.ok(bean, MediaType.APPLICATION_JSON).build();
+    }
+
+    private Command parseCommand(Item item, String value,
+            Map<List<Class<? extends Command>>, Map<String, Command>> parsedCommands) {
+        List<Class<? extends Command>> types = item.getAcceptedCommandTypes();
+        Map<String, Command> commands = parsedCommands.get(types);
+        if (commands == null) {
+            commands = new HashMap<String, Command>();
+            parsedCommands.put(types, commands);
+        }
+        if (commands.containsKey(value)) {
+            return commands.get(value);
+        }
+        Command command = TypeParser.parseCommand(types, value);
+        commands.put(value, command);
+        return command;
+    }
+
     protected void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
     }
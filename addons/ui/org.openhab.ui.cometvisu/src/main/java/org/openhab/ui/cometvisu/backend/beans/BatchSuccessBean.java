@@ -0,0 +1,22 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.backend.beans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a java bean that is used with JAXB to report the results of a
+ * batch write request. <code>success</code> is 1 if all writes succeeded.
+ *
+ * @since 2.0.0
+ */
+public class BatchSuccessBean {
+    public int success;
+    public List<WriteResultBean> results = new ArrayList<WriteResultBean>();
+}
@@ -0,0 +1,24 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.backend.beans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a java bean that is used with JAXB to report the delivery
+ * statistics of all SSE connections.
+ *
+ * @since 2.0.0
+ */
+public class SseStatsBean {
+    public long droppedClients;
+    public int queuedClients;
+    public int stalledClients;
+    public List<ConnectionStatsBean> connections = new ArrayList<ConnectionStatsBean>();
+}
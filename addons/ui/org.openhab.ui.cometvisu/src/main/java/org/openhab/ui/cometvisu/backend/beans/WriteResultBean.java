@@ -0,0 +1,20 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.backend.beans;
+
+/**
+ * This is a java bean that is used with JAXB to report the result of a
+ * single write of a batch write request.
+ *
+ * @since 2.0.0
+ */
+public class WriteResultBean {
+    public String address;
+    public int success;
+    public String error;
+}
@@ -45,6 +45,14 @@ public class Config {
 
     public static String COMETVISU_WEBAPP_USERFILE_FOLDER = File.separator + "cometvisu";
 
+    public static final String COMETVISU_BATCH_WINDOW_PROPERTY = "batchWindow";
+
+    /**
+     * time in milliseconds state updates are collected before they are sent
+     * to the clients as one message, 0 to send every update immediately
+     */
+    public static long COMETVISU_BATCH_WINDOW = 20;
+
     /*
      * path of the cometvisu backend (automatically prefixed by /rest/)
      * all the backend aliases must not be changed as they are hard coded in the CometVisu client
@@ -12,7 +12,6 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
 import java.util.List;
 
 import javax.ws.rs.Produces;
@@ -22,7 +21,6 @@ import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
 
-import org.apache.commons.lang.StringUtils;
 import org.openhab.ui.cometvisu.backend.beans.StateBean;
 
 /**
@@ -68,23 +66,62 @@ public class StateBeanMessageBodyWriter implements MessageBodyWriter<Object> {
      *         - CV-Protocol state update json format {d:{item:state,...}}
      */
     public String serialize(Object bean) {
-        String msg = "{\"d\":{";
+        StringBuilder msg = new StringBuilder("{\"d\":{");
         if (bean instanceof StateBean) {
-            StateBean stateBean = (StateBean) bean;
-            msg += "\"" + stateBean.name + "\":\"" + stateBean.state + "\"";
+            appendState(msg, (StateBean) bean);
         } else if (bean instanceof List<?>) {
-            List<String> states = new ArrayList<String>();
+            boolean first = true;
             for (Object bo : (List<?>) bean) {
                 if (bo instanceof StateBean) {
-                    StateBean stateBean = (StateBean) bo;
-                    states.add("\"" + stateBean.name + "\":\"" + stateBean.state + "\"");
+                    if (!first) {
+                        msg.append(',');
+                    }
+                    appendState(msg, (StateBean) bo);
+                    first = false;
                 }
             }
-            if (states.size() > 0) {
-                msg += StringUtils.join(states, ",");
+        }
+        msg.append("}}");
+        return msg.toString();
+    }
+
+    /**
+     * Serializes a single state, so that it can be reused in the messages of
+     * several clients.
+     *
+     * @param stateBean
+     *            - the state
+     * @return String
+     *         - json member "item":"state"
+     */
+    public static String serializeState(StateBean stateBean) {
+        StringBuilder sb = new StringBuilder(stateBean.name.length() + stateBean.state.length() + 5);
+        appendState(sb, stateBean);
+        return sb.toString();
+    }
+
+    /**
+     * Joins states serialized by {@link #serializeState(StateBean)} to a
+     * message.
+     *
+     * @param states
+     *            - serialized states
+     * @return String
+     *         - CV-Protocol state update json format {d:{item:state,...}}
+     */
+    public static String serializeStates(List<String> states) {
+        StringBuilder msg = new StringBuilder("{\"d\":{");
+        for (int i = 0; i < states.size(); i++) {
+            if (i > 0) {
+                msg.append(',');
             }
+            msg.append(states.get(i));
         }
-        msg += "}}";
-        return msg;
+        msg.append("}}");
+        return msg.toString();
+    }
+
+    private static void appendState(StringBuilder sb, StateBean stateBean) {
+        sb.append('"').append(stateBean.name).append("\":\"").append(stateBean.state).append('"');
     }
 }
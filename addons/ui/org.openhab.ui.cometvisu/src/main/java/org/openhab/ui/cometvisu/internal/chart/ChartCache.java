@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the closed part of chart series, i.e. the rows of time buckets which
+ * lie completely in the past and therefore cannot change anymore. A series is
+ * identified by a key (item, persistence service, consolidation function and
+ * resolution) and cached from a start time on, so that a chart whose time
+ * range moves forward only needs to query the rows after the cached part.
+ * The least recently used series are evicted once the cache holds more than
+ * {@link #MAX_ROWS} rows or {@link #MAX_ENTRIES} series.
+ *
+ * @since 2.0.0
+ */
+public class ChartCache {
+
+    private static final int MAX_ENTRIES = 100;
+
+    private static final int MAX_ROWS = 200000;
+
+    private final LinkedHashMap<String, CachedSeries> series = new LinkedHashMap<String, CachedSeries>(16, 0.75f,
+            true);
+
+    private int rowCount = 0;
+
+    /**
+     * @param key
+     *            - identifies the series
+     * @param start
+     *            - the start of the requested time range in milliseconds
+     * @return the cached series, or null if no series is cached which starts
+     *         at or before the given time
+     */
+    public synchronized CachedSeries get(String key, long start) {
+        CachedSeries cached = series.get(key);
+        if (cached == null || cached.start > start) {
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * caches the closed rows of a series
+     *
+     * @param key
+     *            - identifies the series
+     * @param start
+     *            - the start of the cached time range in milliseconds
+     * @param closedUntil
+     *            - the end of the closed time range in milliseconds, all rows
+     *            before this time are complete
+     * @param rows
+     *            - the rows of the closed time range in ascending order
+     */
+    public synchronized void put(String key, long start, long closedUntil, List<Object[]> rows) {
+        if (rows.size() > MAX_ROWS) {
+            remove(key);
+            return;
+        }
+        CachedSeries previous = series.put(key,
+                new CachedSeries(start, closedUntil, Collections.unmodifiableList(rows)));
+        if (previous != null) {
+            rowCount -= previous.rows.size();
+        }
+        rowCount += rows.size();
+
+        Iterator<Map.Entry<String, CachedSeries>> it = series.entrySet().iterator();
+        while ((rowCount > MAX_ROWS || series.size() > MAX_ENTRIES) && it.hasNext()) {
+            rowCount -= it.next().getValue().rows.size();
+            it.remove();
+        }
+    }
+
+    public synchronized void remove(String key) {
+        CachedSeries previous = series.remove(key);
+        if (previous != null) {
+            rowCount -= previous.rows.size();
+        }
+    }
+
+    public synchronized void clear() {
+        series.clear();
+        rowCount = 0;
+    }
+
+    /**
+     * the closed part of a series
+     */
+    public static class CachedSeries {
+        private final long start;
+        private final long closedUntil;
+        private final List<Object[]> rows;
+
+        CachedSeries(long start, long closedUntil, List<Object[]> rows) {
+            this.start = start;
+            this.closedUntil = closedUntil;
+            this.rows = rows;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getClosedUntil() {
+            return closedUntil;
+        }
+
+        /**
+         * @return the rows [timestamp, values] in ascending order
+         */
+        public List<Object[]> getRows() {
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.chart;
+
+/**
+ * Streaming implementation of the Largest-Triangle-Three-Buckets (LTTB)
+ * downsampling algorithm. The time range is divided into buckets of a fixed
+ * length and from every bucket the point is selected which forms the largest
+ * triangle with the point selected from the previous bucket and the average of
+ * the next bucket. The first and the last point are always kept.
+ * Points have to be added in ascending order of time. Only the points of two
+ * buckets are held in memory and the selected points are handed to the
+ * {@link PointConsumer} in ascending order as soon as they are known.
+ *
+ * @since 2.0.0
+ */
+public class SeriesDownsampler {
+
+    /**
+     * receives the selected points
+     */
+    public interface PointConsumer {
+        public void point(long time, double value);
+    }
+
+    private final long start;
+    private final long bucketSize;
+    private final PointConsumer consumer;
+
+    private Bucket current = new Bucket();
+    private Bucket next = new Bucket();
+    private long currentIndex = -1;
+    private long nextIndex = -1;
+
+    private boolean hasSelected = false;
+    private long selectedTime;
+    private double selectedValue;
+
+    /**
+     * @param start
+     *            - the start of the time range in milliseconds
+     * @param bucketSize
+     *            - the length of a bucket in milliseconds, a value <= 0
+     *            disables downsampling
+     * @param consumer
+     *            - receives the selected points
+     */
+    public SeriesDownsampler(long start, long bucketSize, PointConsumer consumer) {
+        this.start = start;
+        this.bucketSize = bucketSize;
+        this.consumer = consumer;
+    }
+
+    /**
+     * adds the next point of the series
+     */
+    public void add(long time, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        if (bucketSize <= 0) {
+            consumer.point(time, value);
+            return;
+        }
+        if (!hasSelected) {
+            // the first point is always kept
+            select(time, value);
+            return;
+        }
+        long index = Math.max((time - start) / bucketSize, 0);
+        if (currentIndex < 0) {
+            currentIndex = index;
+        }
+        if (index <= currentIndex) {
+            current.add(time, value);
+            return;
+        }
+        if (nextIndex < 0) {
+            nextIndex = index;
+        }
+        if (index > nextIndex) {
+            // the next bucket is complete, so the point of the current one can be selected
+            selectFromCurrent(next.averageTime(), next.averageValue());
+            Bucket swap = current;
+            current = next;
+            currentIndex = nextIndex;
+            next = swap;
+            next.clear();
+            nextIndex = index;
+        }
+        next.add(time, value);
+    }
+
+    /**
+     * selects the points of the remaining buckets, must be called after the
+     * last point has been added
+     */
+    public void finish() {
+        if (next.size > 0) {
+            selectFromCurrent(next.averageTime(), next.averageValue());
+            Bucket swap = current;
+            current = next;
+            next = swap;
+        }
+        if (current.size > 0) {
+            // the last point is always kept and forms a bucket of its own
+            current.size--;
+            long lastTime = current.time[current.size];
+            double lastValue = current.value[current.size];
+            selectFromCurrent(lastTime, lastValue);
+            select(lastTime, lastValue);
+        }
+        current = new Bucket();
+        next = new Bucket();
+        currentIndex = -1;
+        nextIndex = -1;
+    }
+
+    private void selectFromCurrent(double nextTime, double nextValue) {
+        if (current.size == 0) {
+            return;
+        }
+        int selected = 0;
+        double maxArea = -1;
+        for (int i = 0; i < current.size; i++) {
+            // twice the area of the triangle, only used for comparison
+            double area = Math.abs((selectedTime - nextTime) * (current.value[i] - selectedValue)
+                    - (selectedTime - current.time[i]) * (nextValue - selectedValue));
+            if (area > maxArea) {
+                maxArea = area;
+                selected = i;
+            }
+        }
+        select(current.time[selected], current.value[selected]);
+        current.clear();
+    }
+
+    private void select(long time, double value) {
+        hasSelected = true;
+        selectedTime = time;
+        selectedValue = value;
+        consumer.point(time, value);
+    }
+
+    private static class Bucket {
+        long[] time = new long[16];
+        double[] value = new double[16];
+        int size = 0;
+
+        void add(long t, double v) {
+            if (size == time.length) {
+                long[] newTime = new long[size * 2];
+                double[] newValue = new double[size * 2];
+                System.arraycopy(time, 0, newTime, 0, size);
+                System.arraycopy(value, 0, newValue, 0, size);
+                time = newTime;
+                value = newValue;
+            }
+            time[size] = t;
+            value[size] = v;
+            size++;
+        }
+
+        double averageTime() {
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += time[i];
+            }
+            return sum / size;
+        }
+
+        double averageValue() {
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += value[i];
+            }
+            return sum / size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
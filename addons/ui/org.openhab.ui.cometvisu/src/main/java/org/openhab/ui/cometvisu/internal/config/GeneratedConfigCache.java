@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.config;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.smarthome.core.items.Item;
+import org.eclipse.smarthome.core.items.ItemRegistryChangeListener;
+import org.eclipse.smarthome.model.sitemap.Sitemap;
+
+/**
+ * Caches the configs generated from sitemaps by {@link VisuConfig}. A config
+ * is cached per sitemap and number of path segments of the request (which
+ * determines the relative path to the XSD file). When a sitemap file is
+ * reloaded the sitemap provider returns a new model instance, which makes the
+ * cached config stale. Any change in the item registry invalidates all
+ * configs.
+ *
+ * @since 2.0.0
+ */
+public class GeneratedConfigCache implements ItemRegistryChangeListener {
+
+    private final Map<String, CachedConfig> configs = new ConcurrentHashMap<String, CachedConfig>();
+
+    private long generation = 0;
+
+    /**
+     * @return the cached config of the sitemap, or null if it has to be
+     *         generated
+     */
+    public String get(Sitemap sitemap, int requestFolders) {
+        CachedConfig cached = configs.get(getKey(sitemap, requestFolders));
+        if (cached == null || cached.sitemap != sitemap) {
+            return null;
+        }
+        return cached.xml;
+    }
+
+    /**
+     * @return the current generation, which has to be passed to
+     *         {@link #put(Sitemap, int, String, long)} after generating a
+     *         config
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * caches the config unless the cache has been invalidated since
+     * <code>generation</code> was read
+     */
+    public synchronized void put(Sitemap sitemap, int requestFolders, String xml, long generation) {
+        if (this.generation == generation) {
+            configs.put(getKey(sitemap, requestFolders), new CachedConfig(sitemap, xml));
+        }
+    }
+
+    /**
+     * removes all cached configs
+     */
+    public synchronized void invalidate() {
+        generation++;
+        configs.clear();
+    }
+
+    private String getKey(Sitemap sitemap, int requestFolders) {
+        return sitemap.getName() + "/" + requestFolders;
+    }
+
+    @Override
+    public void added(Item element) {
+        invalidate();
+    }
+
+    @Override
+    public void removed(Item element) {
+        invalidate();
+    }
+
+    @Override
+    public void updated(Item oldElement, Item element) {
+        invalidate();
+    }
+
+    @Override
+    public void allItemsChanged(Collection<String> oldItemNames) {
+        invalidate();
+    }
+
+    private static class CachedConfig {
+        private final Sitemap sitemap;
+        private final String xml;
+
+        CachedConfig(Sitemap sitemap, String xml) {
+            this.sitemap = sitemap;
+            this.xml = xml;
+        }
+    }
+}
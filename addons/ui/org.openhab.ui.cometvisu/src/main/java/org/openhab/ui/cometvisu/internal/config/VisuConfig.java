@@ -91,6 +91,14 @@ public class VisuConfig {
 
     private ObjectFactory factory = new ObjectFactory();
 
+    /**
+     * the JAXBContext and the compiled XSD schema are thread safe and
+     * expensive to create, so they are shared by all generated configs
+     */
+    private static JAXBContext jaxbContext;
+    private static String schemaPath;
+    private static Schema schema;
+
     public VisuConfig(Sitemap sitemap, CometVisuApp app, File rootFolder) {
         this.sitemap = sitemap;
         this.app = app;
@@ -113,7 +121,7 @@ public class VisuConfig {
         pagesBean.setScrollSpeed(new BigDecimal(0));
 
         // set relative path to XSD file
-        int requestFolders = req.getPathInfo().substring(1).split("/").length;
+        int requestFolders = getRequestFolders(req);
         logger.debug("requestPath '{}' has '{}' parts", req.getPathInfo(), requestFolders);
         String relXsd = "";
         for (int i = 1; i < requestFolders; i++) {
@@ -130,15 +138,41 @@ public class VisuConfig {
         return marshal(pagesBean, rootFolder.getAbsolutePath() + File.separator + schemaFile);
     }
 
+    /**
+     * returns the number of path segments of the requested config file, which
+     * determines the relative path to the XSD file in the generated config
+     *
+     * @param req
+     * @return number of path segments
+     */
+    public static int getRequestFolders(HttpServletRequest req) {
+        return req.getPathInfo().substring(1).split("/").length;
+    }
+
+    private static synchronized JAXBContext getJaxbContext(Class<?> beanClass) throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(beanClass);
+        }
+        return jaxbContext;
+    }
+
+    private static synchronized Schema getSchema(String xsdSchema) throws SAXException {
+        if (xsdSchema == null || xsdSchema.trim().length() == 0) {
+            return null;
+        }
+        if (schema == null || !xsdSchema.equals(schemaPath)) {
+            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+            schema = schemaFactory.newSchema(new File(xsdSchema));
+            schemaPath = xsdSchema;
+        }
+        return schema;
+    }
+
     private String marshal(Pages bean, String xsdSchema) {
         String res = "";
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(bean.getClass());
-            SchemaFactory schemaFactory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-            Schema schema = (xsdSchema == null || xsdSchema.trim().length() == 0) ? null
-                    : schemaFactory.newSchema(new File(xsdSchema));
-            Marshaller marshaller = jaxbContext.createMarshaller();
-            marshaller.setSchema(schema);
+            Marshaller marshaller = getJaxbContext(bean.getClass()).createMarshaller();
+            marshaller.setSchema(getSchema(xsdSchema));
             marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
             marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             StringWriter sw = new StringWriter();
@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.editor.dataprovider;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.smarthome.core.items.Item;
+import org.eclipse.smarthome.core.items.ItemRegistryChangeListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the serialized responses of the editor data providers. Any change in
+ * the item registry and any change in one of the watched directories (icons,
+ * plugins, designs) invalidates all responses. Responses which were built
+ * while an invalidation happened are not cached.
+ * <p>
+ * If the directories cannot be watched, responses depending on them are not
+ * cached at all.
+ *
+ * @since 2.0.0
+ */
+public class DataProviderCache implements ItemRegistryChangeListener {
+    private static final Logger logger = LoggerFactory.getLogger(DataProviderCache.class);
+
+    private final Map<String, String> responses = new ConcurrentHashMap<String, String>();
+
+    private final Set<Path> watchedDirectories = new HashSet<Path>();
+
+    private WatchService watchService;
+
+    private boolean closed = false;
+
+    private long generation = 0;
+
+    /**
+     * @return the cached response of the data provider, or null if it has to
+     *         be built
+     */
+    public String get(String name) {
+        return responses.get(name);
+    }
+
+    /**
+     * @return the current generation, which has to be passed to
+     *         {@link #put(String, String, long)} after building a response
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * caches the response unless the cache has been invalidated since
+     * <code>generation</code> was read
+     */
+    public synchronized void put(String name, String json, long generation) {
+        if (this.generation == generation) {
+            responses.put(name, json);
+        }
+    }
+
+    /**
+     * watches the directory for changes, which invalidate the cached responses
+     *
+     * @return false if the directory cannot be watched, responses depending
+     *         on it must not be cached then
+     */
+    public synchronized boolean watch(File directory) {
+        if (closed || !directory.isDirectory()) {
+            return false;
+        }
+        Path path = directory.getAbsoluteFile().toPath();
+        if (watchedDirectories.contains(path)) {
+            return true;
+        }
+        try {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+                startWatching(watchService);
+            }
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.add(path);
+            return true;
+        } catch (IOException e) {
+            logger.debug("cannot watch directory '{}': {}", directory, e.getMessage());
+            return false;
+        }
+    }
+
+    private void startWatching(final WatchService service) {
+        Thread watchThread = new Thread("CometVisu data provider watcher") {
+            @Override
+            public void run() {
+                while (true) {
+                    WatchKey key;
+                    try {
+                        key = service.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (ClosedWatchServiceException e) {
+                        return;
+                    }
+                    key.pollEvents();
+                    invalidate();
+                    if (!key.reset()) {
+                        synchronized (DataProviderCache.this) {
+                            watchedDirectories.remove(key.watchable());
+                        }
+                    }
+                }
+            }
+        };
+        watchThread.setDaemon(true);
+        watchThread.start();
+    }
+
+    /**
+     * removes all cached responses
+     */
+    public synchronized void invalidate() {
+        generation++;
+        responses.clear();
+    }
+
+    /**
+     * stops watching the directories and removes all cached responses
+     */
+    public synchronized void close() {
+        closed = true;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("error closing watch service: {}", e.getMessage());
+            }
+            watchService = null;
+        }
+        watchedDirectories.clear();
+        invalidate();
+    }
+
+    @Override
+    public void added(Item element) {
+        invalidate();
+    }
+
+    @Override
+    public void removed(Item element) {
+        invalidate();
+    }
+
+    @Override
+    public void updated(Item oldElement, Item element) {
+        invalidate();
+    }
+
+    @Override
+    public void allItemsChanged(Collection<String> oldItemNames) {
+        invalidate();
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.sse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.smarthome.core.types.State;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.openhab.ui.cometvisu.internal.StateBeanMessageBodyWriter;
+import org.openhab.ui.cometvisu.internal.util.SseUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single SSE connection of a CometVisu client together with the item
+ * addresses it has subscribed to.
+ * <p>
+ * Events are not written by the thread producing them but queued per
+ * connection and written by an {@link SseDispatcher}, so a client which does
+ * not read fast enough cannot delay the others. While the client is busy,
+ * pending state updates of the same address are coalesced to the latest
+ * state. Other events are queued up to {@link #MAX_PENDING_EVENTS}, beyond
+ * that the client is dropped.
+ *
+ * @since 2.0.0
+ */
+public class SseClient {
+    private static final Logger logger = LoggerFactory.getLogger(SseClient.class);
+
+    /** the maximum number of queued events other than state updates */
+    private static final int MAX_PENDING_EVENTS = 100;
+
+    /** a write taking longer than this means the client has stalled */
+    private static final long STALL_TIMEOUT = 10000;
+
+    private final EventOutput eventOutput;
+
+    private final Map<String, Map<String, Class<? extends State>>> items;
+
+    private final Set<String> addresses;
+
+    /** CometVisu address -> serialized state */
+    private final LinkedHashMap<String, String> pendingStates = new LinkedHashMap<String, String>();
+
+    private final ArrayDeque<OutboundEvent> pendingEvents = new ArrayDeque<OutboundEvent>();
+
+    /** the sequence of the latest pending state update */
+    private long pendingSequence;
+
+    private boolean scheduled = false;
+
+    private volatile long writeStarted = 0;
+
+    /** the thread currently writing to the connection */
+    private volatile Thread writer;
+
+    private long sentEvents = 0;
+
+    private long coalescedStates = 0;
+
+    private long droppedEvents = 0;
+
+    /**
+     * @param eventOutput
+     *            - the connection to the client
+     * @param items
+     *            - openHAB item name -> (CometVisu address -> requested state type)
+     */
+    public SseClient(EventOutput eventOutput, Map<String, Map<String, Class<? extends State>>> items) {
+        this.eventOutput = eventOutput;
+        this.items = Collections.unmodifiableMap(items);
+        Set<String> requested = new HashSet<String>();
+        for (Map<String, Class<? extends State>> itemAddresses : items.values()) {
+            requested.addAll(itemAddresses.keySet());
+        }
+        this.addresses = Collections.unmodifiableSet(requested);
+    }
+
+    public EventOutput getEventOutput() {
+        return eventOutput;
+    }
+
+    /**
+     * @return openHAB item name -> (CometVisu address -> requested state type)
+     */
+    public Map<String, Map<String, Class<? extends State>>> getItems() {
+        return items;
+    }
+
+    /**
+     * @return all CometVisu addresses the client has subscribed to
+     */
+    public Set<String> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * queues the serialized state updates for the client, replacing pending
+     * updates of the same addresses
+     *
+     * @param states
+     *            - CometVisu address -> serialized state
+     * @param sequence
+     *            - the sequence of the update, used as event id
+     * @return true if the client has to be scheduled for delivery
+     */
+    public synchronized boolean enqueueStates(Map<String, String> states, long sequence) {
+        for (Map.Entry<String, String> state : states.entrySet()) {
+            if (pendingStates.put(state.getKey(), state.getValue()) != null) {
+                coalescedStates++;
+            }
+        }
+        pendingSequence = sequence;
+        return schedule();
+    }
+
+    /**
+     * queues the event for the client
+     *
+     * @return true if the client has to be scheduled for delivery
+     * @throws IllegalStateException
+     *             if the client does not keep up and has to be dropped
+     */
+    public synchronized boolean enqueue(OutboundEvent event) {
+        if (pendingEvents.size() >= MAX_PENDING_EVENTS) {
+            droppedEvents++;
+            throw new IllegalStateException("too many pending events");
+        }
+        pendingEvents.add(event);
+        return schedule();
+    }
+
+    private boolean schedule() {
+        if (scheduled) {
+            return false;
+        }
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * @return true if a write to the client has been blocked for too long
+     */
+    public boolean isStalled() {
+        long started = writeStarted;
+        return started > 0 && System.currentTimeMillis() - started > STALL_TIMEOUT;
+    }
+
+    /**
+     * writes all queued events to the client, called by the
+     * {@link SseDispatcher} only
+     *
+     * @return false if the connection is closed
+     */
+    boolean deliver() {
+        while (true) {
+            OutboundEvent event;
+            synchronized (this) {
+                event = pendingEvents.poll();
+                if (event == null && !pendingStates.isEmpty()) {
+                    event = SseUtil.buildEvent(
+                            StateBeanMessageBodyWriter.serializeStates(new ArrayList<String>(pendingStates.values()))
+                                    .getBytes(StandardCharsets.UTF_8),
+                            pendingSequence);
+                    pendingStates.clear();
+                }
+                if (event == null) {
+                    scheduled = false;
+                    return true;
+                }
+            }
+            writer = Thread.currentThread();
+            writeStarted = System.currentTimeMillis();
+            boolean sent = send(event);
+            writeStarted = 0;
+            writer = null;
+            // clear a pending abort so it does not hit the next client of this thread
+            Thread.interrupted();
+            if (!sent) {
+                synchronized (this) {
+                    pendingEvents.clear();
+                    pendingStates.clear();
+                    scheduled = false;
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return the number of events and coalesced state updates waiting for
+     *         delivery
+     */
+    public synchronized int getQueueDepth() {
+        return pendingEvents.size() + (pendingStates.isEmpty() ? 0 : 1);
+    }
+
+    public synchronized long getSentEvents() {
+        return sentEvents;
+    }
+
+    /**
+     * @return the number of state updates which have been replaced by a newer
+     *         state before they were sent
+     */
+    public synchronized long getCoalescedStates() {
+        return coalescedStates;
+    }
+
+    /**
+     * @return the number of events which could not be queued
+     */
+    public synchronized long getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * sends the event to the client
+     *
+     * @param event
+     *            - the event to send
+     * @return false if the connection is closed
+     */
+    private boolean send(OutboundEvent event) {
+        if (eventOutput.isClosed()) {
+            return false;
+        }
+        try {
+            eventOutput.write(event);
+            synchronized (this) {
+                sentEvents++;
+            }
+            return true;
+        } catch (IOException e) {
+            logger.debug("closing SSE connection after write error: {}", e.getMessage());
+            close();
+            return false;
+        }
+    }
+
+    public boolean isClosed() {
+        return eventOutput.isClosed();
+    }
+
+    /**
+     * interrupts a blocked write, the container then fails the write and
+     * the connection is closed by the writing thread
+     */
+    void abort() {
+        Thread thread = writer;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public void close() {
+        try {
+            eventOutput.close();
+        } catch (IOException e) {
+            logger.debug("error closing SSE connection: {}", e.getMessage());
+        }
+    }
+}
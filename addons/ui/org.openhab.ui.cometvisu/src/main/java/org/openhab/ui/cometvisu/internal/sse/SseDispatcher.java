@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.sse;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.glassfish.jersey.media.sse.OutboundEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the queued events of the {@link SseClient}s on a bounded pool of
+ * threads shared by all connections. Every client is handled by at most one
+ * thread at a time, so its events are written in order, and a client whose
+ * connection blocks only occupies a single thread.
+ * <p>
+ * The threads which are writing are checked periodically. A client whose
+ * write has been blocked for too long is dropped: its writing thread is
+ * interrupted, which makes the container fail the write, and its connection
+ * is closed. Until the blocked write actually returns, the pool grows by
+ * one thread, so the other clients are still served by {@link #MAX_THREADS}
+ * threads. At most {@link #MAX_STALLED_THREADS} extra threads are added; a
+ * container which ignores the interrupt keeps such a thread until its own
+ * write timeout expires, and beyond that limit further stalled clients
+ * reduce the threads left for the others again.
+ *
+ * @since 2.0.0
+ */
+public class SseDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(SseDispatcher.class);
+
+    /** the number of connections which are written to at the same time */
+    private static final int MAX_THREADS = 8;
+
+    /** the maximum number of threads added for writes which are blocked */
+    private static final int MAX_STALLED_THREADS = 32;
+
+    /** the interval in milliseconds in which blocked writes are looked for */
+    private static final long STALL_CHECK_INTERVAL = 1000;
+
+    /**
+     * is notified about clients which have to be removed
+     */
+    public interface ClosedHandler {
+        /**
+         * @param client
+         *            - the client whose connection has been closed or dropped
+         */
+        public void closed(SseClient client);
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    /** checks for blocked writes */
+    private final ScheduledExecutorService watchdog;
+
+    /** closes the connections of dropped clients */
+    private final ExecutorService closer;
+
+    private final ClosedHandler handler;
+
+    private final AtomicLong droppedClients = new AtomicLong();
+
+    /** the clients which are being written to, guarded by itself */
+    private final Set<SseClient> delivering = new HashSet<SseClient>();
+
+    /**
+     * stalled client -> whether a thread has been added for it, guarded by
+     * {@link #delivering}
+     */
+    private final Map<SseClient, Boolean> stalled = new HashMap<SseClient, Boolean>();
+
+    /** the number of threads added for blocked writes, guarded by {@link #delivering} */
+    private int stalledThreads = 0;
+
+    public SseDispatcher(ClosedHandler handler) {
+        this.handler = handler;
+        this.executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "CometVisu-sse-" + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CometVisu-sse-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.closer = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "CometVisu-sse-close-" + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.watchdog.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                dropStalledClients();
+            }
+        }, STALL_CHECK_INTERVAL, STALL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * queues the state updates for the client and schedules their delivery
+     *
+     * @param states
+     *            - CometVisu address -> serialized state
+     */
+    public void dispatchStates(SseClient client, Map<String, String> states, long sequence) {
+        if (dropIfStalled(client)) {
+            return;
+        }
+        if (client.enqueueStates(states, sequence)) {
+            schedule(client);
+        }
+    }
+
+    /**
+     * queues the event for the client and schedules its delivery, the client
+     * is dropped if it has too many pending events
+     */
+    public void dispatch(SseClient client, OutboundEvent event) {
+        if (dropIfStalled(client)) {
+            return;
+        }
+        try {
+            if (client.enqueue(event)) {
+                schedule(client);
+            }
+        } catch (IllegalStateException e) {
+            drop(client, e.getMessage());
+        }
+    }
+
+    private boolean dropIfStalled(SseClient client) {
+        if (client.isStalled()) {
+            dropStalled(client);
+            return true;
+        }
+        return false;
+    }
+
+    private void dropStalledClients() {
+        List<SseClient> clients;
+        synchronized (delivering) {
+            clients = new ArrayList<SseClient>(delivering);
+        }
+        for (SseClient client : clients) {
+            if (client.isStalled()) {
+                dropStalled(client);
+            }
+        }
+    }
+
+    private void dropStalled(SseClient client) {
+        synchronized (delivering) {
+            if (!delivering.contains(client) || stalled.containsKey(client)) {
+                // the write has returned in the meantime or the client has been dropped already
+                return;
+            }
+            boolean addThread = stalledThreads < MAX_STALLED_THREADS;
+            stalled.put(client, addThread);
+            if (addThread) {
+                stalledThreads++;
+                // grow the maximum first, it must never be below the core size
+                executor.setMaximumPoolSize(MAX_THREADS + stalledThreads);
+                executor.setCorePoolSize(MAX_THREADS + stalledThreads);
+            }
+        }
+        client.abort();
+        drop(client, "write blocked");
+    }
+
+    private void drop(final SseClient client, String reason) {
+        logger.debug("dropping slow SSE client: {}", reason);
+        droppedClients.incrementAndGet();
+        handler.closed(client);
+        try {
+            // closing waits for a blocked write, so it must not delay the caller
+            closer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    client.close();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the dispatcher has been shut down
+            client.close();
+        }
+    }
+
+    private void schedule(final SseClient client) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (delivering) {
+                        delivering.add(client);
+                    }
+                    boolean open;
+                    try {
+                        open = client.deliver();
+                    } finally {
+                        released(client);
+                    }
+                    if (!open) {
+                        handler.closed(client);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the dispatcher has been shut down
+            client.close();
+        }
+    }
+
+    private void released(SseClient client) {
+        synchronized (delivering) {
+            delivering.remove(client);
+            if (Boolean.TRUE.equals(stalled.remove(client))) {
+                stalledThreads--;
+                // shrink the core size first, it must never exceed the maximum
+                executor.setCorePoolSize(MAX_THREADS + stalledThreads);
+                executor.setMaximumPoolSize(MAX_THREADS + stalledThreads);
+            }
+        }
+    }
+
+    /**
+     * @return the number of clients which have been dropped because they did
+     *         not keep up
+     */
+    public long getDroppedClients() {
+        return droppedClients.get();
+    }
+
+    /**
+     * @return the number of writes which are blocked by a dropped client
+     */
+    public int getStalledClients() {
+        synchronized (delivering) {
+            return stalled.size();
+        }
+    }
+
+    /**
+     * @return the number of clients waiting for a free thread
+     */
+    public int getQueuedClients() {
+        return executor.getQueue().size();
+    }
+
+    public void shutdown() {
+        watchdog.shutdownNow();
+        closer.shutdown();
+        executor.shutdownNow();
+    }
+}
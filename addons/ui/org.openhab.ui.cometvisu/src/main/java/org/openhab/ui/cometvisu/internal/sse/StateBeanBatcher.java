@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.sse;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.ui.cometvisu.backend.beans.StateBean;
+import org.openhab.ui.cometvisu.internal.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects state updates for a short time window and hands them over as one
+ * batch. Only the last state of every address is kept, so a burst of updates
+ * (e.g. of a group and its members) results in a single SSE message instead of
+ * one message per update.
+ * The length of the window is configured by {@link Config#COMETVISU_BATCH_WINDOW},
+ * a window of 0 disables batching.
+ *
+ * @since 2.0.0
+ */
+public class StateBeanBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(StateBeanBatcher.class);
+
+    /**
+     * receives the collected state updates
+     */
+    public interface FlushHandler {
+        /**
+         * @param states
+         *            - the last state of every address updated in the window,
+         *            in the order of their first update
+         */
+        public void flush(List<StateBean> states);
+    }
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final FlushHandler handler;
+
+    private Map<String, StateBean> pending = new LinkedHashMap<String, StateBean>();
+
+    private boolean flushScheduled = false;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    public StateBeanBatcher(FlushHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * adds a state update to the current batch, replacing a pending update of
+     * the same address
+     */
+    public void add(StateBean stateBean) {
+        synchronized (this) {
+            pending.put(stateBean.name, stateBean);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        try {
+            long window = Config.COMETVISU_BATCH_WINDOW;
+            if (window > 0) {
+                scheduler.schedule(flushTask, window, TimeUnit.MILLISECONDS);
+            } else {
+                scheduler.execute(flushTask);
+            }
+        } catch (RejectedExecutionException e) {
+            logger.debug("dropping state update of '{}' after shutdown", stateBean.name);
+        }
+    }
+
+    /**
+     * executes the task on the thread which flushes the batches, so that it
+     * is ordered with the state updates
+     */
+    public void execute(Runnable task) {
+        try {
+            scheduler.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.debug("dropping task after shutdown");
+        }
+    }
+
+    private void flush() {
+        List<StateBean> states;
+        synchronized (this) {
+            states = new ArrayList<StateBean>(pending.values());
+            pending = new LinkedHashMap<String, StateBean>();
+            flushScheduled = false;
+        }
+        if (states.isEmpty()) {
+            return;
+        }
+        try {
+            handler.flush(states);
+        } catch (RuntimeException e) {
+            logger.error("error sending state updates", e);
+        }
+    }
+
+    /**
+     * stops the batcher, pending updates are discarded
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.sse;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.openhab.ui.cometvisu.backend.beans.StateBean;
+
+/**
+ * Bounded ring buffer of the most recently sent state updates. Every batch of
+ * updates gets a sequence number which is used as SSE event id, so that a
+ * reconnecting client can be sent only the updates it has missed. Once the
+ * missed updates have been evicted from the buffer the client needs a full
+ * snapshot of its states again.
+ * The sequence numbers start with the current time in milliseconds, so ids
+ * handed out before a restart of the server are never mistaken for recent
+ * ones.
+ *
+ * @since 2.0.0
+ */
+public class StateReplayBuffer {
+
+    private final long[] sequences;
+    private final StateBean[] states;
+
+    private int head = 0;
+    private int size = 0;
+
+    private long lastSequence;
+
+    /** the highest sequence number of all evicted updates */
+    private long evictedSequence;
+
+    /**
+     * @param capacity
+     *            - the maximum number of state updates kept in the buffer
+     */
+    public StateReplayBuffer(int capacity) {
+        this.sequences = new long[capacity];
+        this.states = new StateBean[capacity];
+        this.lastSequence = System.currentTimeMillis();
+        this.evictedSequence = lastSequence;
+    }
+
+    /**
+     * adds a batch of state updates to the buffer, evicting the oldest updates
+     * if necessary
+     *
+     * @return the sequence number of the batch
+     */
+    public synchronized long add(Collection<StateBean> batch) {
+        long sequence = ++lastSequence;
+        for (StateBean state : batch) {
+            int index = (head + size) % states.length;
+            if (size == states.length) {
+                evictedSequence = sequences[head];
+                head = (head + 1) % states.length;
+            } else {
+                size++;
+            }
+            sequences[index] = sequence;
+            states[index] = state;
+        }
+        return sequence;
+    }
+
+    /**
+     * @return the sequence number of the last batch
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Returns the last state of every given address which has been updated
+     * after the batch with the given sequence number.
+     *
+     * @param sequence
+     *            - the sequence number of the last batch a client has received
+     * @param addresses
+     *            - the addresses the client has subscribed to
+     * @return the missed updates, or null if they are not available anymore
+     */
+    public synchronized List<StateBean> getSince(long sequence, Set<String> addresses) {
+        if (sequence < evictedSequence || sequence > lastSequence) {
+            return null;
+        }
+        Map<String, StateBean> missed = new LinkedHashMap<String, StateBean>();
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % states.length;
+            if (sequences[index] > sequence && addresses.contains(states[index].name)) {
+                missed.remove(states[index].name);
+                missed.put(states[index].name, states[index]);
+            }
+        }
+        return new ArrayList<StateBean>(missed.values());
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.sse;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.eclipse.smarthome.core.types.State;
+
+/**
+ * Inverted index from the item addresses requested by the CometVisu clients to
+ * the connected clients which have subscribed to them. Lookups are lock free,
+ * (un)subscribing a client is synchronized.
+ *
+ * @since 2.0.0
+ */
+public class SubscriptionIndex {
+
+    private final Set<SseClient> clients = new CopyOnWriteArraySet<SseClient>();
+
+    /** CometVisu address -> subscribed clients */
+    private final Map<String, Set<SseClient>> subscribers = new ConcurrentHashMap<String, Set<SseClient>>();
+
+    /** openHAB item name -> (CometVisu address -> requested state type) of all clients */
+    private final Map<String, Map<String, Class<? extends State>>> clientItems = new ConcurrentHashMap<String, Map<String, Class<? extends State>>>();
+
+    /**
+     * adds the client and all its subscriptions to the index
+     */
+    public synchronized void add(SseClient client) {
+        if (!clients.add(client)) {
+            return;
+        }
+        for (Map.Entry<String, Map<String, Class<? extends State>>> entry : client.getItems().entrySet()) {
+            for (String address : entry.getValue().keySet()) {
+                Set<SseClient> set = subscribers.get(address);
+                if (set == null) {
+                    set = new CopyOnWriteArraySet<SseClient>();
+                    subscribers.put(address, set);
+                }
+                set.add(client);
+            }
+            updateClientItems(entry.getKey());
+        }
+    }
+
+    /**
+     * removes the client and all its subscriptions from the index
+     */
+    public synchronized void remove(SseClient client) {
+        if (!clients.remove(client)) {
+            return;
+        }
+        for (Map.Entry<String, Map<String, Class<? extends State>>> entry : client.getItems().entrySet()) {
+            for (String address : entry.getValue().keySet()) {
+                Set<SseClient> set = subscribers.get(address);
+                if (set != null) {
+                    set.remove(client);
+                    if (set.isEmpty()) {
+                        subscribers.remove(address);
+                    }
+                }
+            }
+            updateClientItems(entry.getKey());
+        }
+    }
+
+    /**
+     * rebuilds the union of all requested addresses of the given item
+     */
+    private void updateClientItems(String itemName) {
+        Map<String, Class<? extends State>> addresses = new HashMap<String, Class<? extends State>>();
+        for (SseClient client : clients) {
+            Map<String, Class<? extends State>> requested = client.getItems().get(itemName);
+            if (requested != null) {
+                addresses.putAll(requested);
+            }
+        }
+        if (addresses.isEmpty()) {
+            clientItems.remove(itemName);
+        } else {
+            clientItems.put(itemName, Collections.unmodifiableMap(addresses));
+        }
+    }
+
+    /**
+     * @return all clients which have subscribed to the given CometVisu address
+     */
+    public Collection<SseClient> getSubscribers(String address) {
+        Set<SseClient> set = subscribers.get(address);
+        return set != null ? set : Collections.<SseClient> emptySet();
+    }
+
+    /**
+     * @return CometVisu address -> requested state type of all clients which
+     *         have subscribed to the given item, or null if there are none
+     */
+    public Map<String, Class<? extends State>> getClientItems(String itemName) {
+        return clientItems.get(itemName);
+    }
+
+    /**
+     * @return true if at least one client has subscribed to the given item
+     */
+    public boolean isSubscribed(String itemName) {
+        return clientItems.containsKey(itemName);
+    }
+
+    /**
+     * @return the names of all items at least one client has subscribed to
+     */
+    public Set<String> getItemNames() {
+        return Collections.unmodifiableSet(clientItems.keySet());
+    }
+
+    /**
+     * @return all connected clients
+     */
+    public Collection<SseClient> getClients() {
+        return Collections.unmodifiableSet(clients);
+    }
+}
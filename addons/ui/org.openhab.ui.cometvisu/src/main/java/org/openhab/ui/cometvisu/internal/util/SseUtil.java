@@ -7,6 +7,8 @@
  */
 package org.openhab.ui.cometvisu.internal.util;
 
+import java.nio.charset.StandardCharsets;
+
 import javax.ws.rs.core.MediaType;
 
 import org.glassfish.jersey.media.sse.OutboundEvent;
@@ -21,29 +23,49 @@ import org.openhab.ui.cometvisu.internal.StateBeanMessageBodyWriter;
  */
 public class SseUtil {
 
+    private static final StateBeanMessageBodyWriter writer = new StateBeanMessageBodyWriter();
+
     /**
-     * Creates a new {@link OutboundEvent} object containing an
-     * {@link StateBean} created for the given eventType, objectIdentifier,
-     * eventObject.
+     * Creates a new {@link OutboundEvent} object containing the serialized
+     * {@link StateBean} or list of {@link StateBean}s.
      *
-     * @param eventType
-     *            - the event type for the event
-     * @param objectIdentifier
-     *            - the identifier for the main event object
      * @param eventObject
      *            - the eventObject to be included
      * @return a new OutboundEvent.
      */
     public static OutboundEvent buildEvent(Object eventObject) {
+        return buildEvent(eventObject, System.currentTimeMillis());
+    }
 
-        OutboundEvent.Builder eventBuilder = new OutboundEvent.Builder();
-        StateBeanMessageBodyWriter writer = new StateBeanMessageBodyWriter();
-        // OutboundEvent event = eventBuilder.mediaType(MediaType.APPLICATION_JSON_TYPE).data(eventObject).build();
-        java.util.Date date = new java.util.Date();
-        OutboundEvent event = eventBuilder.mediaType(MediaType.APPLICATION_JSON_TYPE)
-                .data(writer.serialize(eventObject)).id(String.valueOf(date.getTime())).build();
+    /**
+     * Creates a new {@link OutboundEvent} object with the given id containing
+     * the serialized {@link StateBean} or list of {@link StateBean}s.
+     *
+     * @param eventObject
+     *            - the eventObject to be included
+     * @param id
+     *            - the event id
+     * @return a new OutboundEvent.
+     */
+    public static OutboundEvent buildEvent(Object eventObject, long id) {
+        return buildEvent(writer.serialize(eventObject).getBytes(StandardCharsets.UTF_8), id);
+    }
 
-        return event;
+    /**
+     * Creates a new {@link OutboundEvent} object containing an already
+     * serialized message. The payload is written as is, so the same event can
+     * be sent to several clients without serializing it again.
+     *
+     * @param payload
+     *            - the UTF-8 encoded json message
+     * @param id
+     *            - the event id
+     * @return a new OutboundEvent.
+     */
+    public static OutboundEvent buildEvent(byte[] payload, long id) {
+        OutboundEvent.Builder eventBuilder = new OutboundEvent.Builder();
+        return eventBuilder.mediaType(MediaType.APPLICATION_JSON_TYPE).data(byte[].class, payload)
+                .id(String.valueOf(id)).build();
     }
 
     /**
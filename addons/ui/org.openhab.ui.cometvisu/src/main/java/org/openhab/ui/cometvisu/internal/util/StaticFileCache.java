@@ -0,0 +1,416 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.cometvisu.internal.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the metadata of the static files served by the CometVisu servlet and
+ * the content of small, frequently requested files. Cached entries are
+ * invalidated by a {@link WatchService} on the directories of the cached
+ * files, so serving a cached file does not touch the filesystem at all.
+ * The directories between a cached file and the parent of the root folder
+ * are watched as well. A directory which is created, deleted or renamed
+ * invalidates everything below it, as the watches of its subdirectories
+ * follow the moved directory.
+ * Files which do not exist are not cached, so requests for missing files
+ * cannot push the existing ones out of the cache.
+ * A precompressed variant of a file (the same name with the suffix
+ * <code>.gz</code>) is detected and can be served to clients accepting gzip.
+ * <p>
+ * If no {@link WatchService} is available, nothing is cached and the metadata
+ * is read from the filesystem on every request.
+ *
+ * @since 2.0.0
+ */
+public class StaticFileCache {
+    private static final Logger logger = LoggerFactory.getLogger(StaticFileCache.class);
+
+    /** files up to this size are kept in memory */
+    private static final long MAX_CONTENT_SIZE = 256 * 1024;
+
+    /** the maximum size of all file contents kept in memory */
+    private static final long MAX_TOTAL_CONTENT_SIZE = 32 * 1024 * 1024;
+
+    /** the maximum number of files whose metadata is cached */
+    private static final int MAX_ENTRIES = 10000;
+
+    private final LinkedHashMap<String, StaticFile> files = new LinkedHashMap<String, StaticFile>(256, 0.75f, true);
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+    private final Map<Path, WatchKey> watchKeys = new HashMap<Path, WatchKey>();
+
+    private long totalContentSize = 0;
+
+    /** counts the invalidations, entries read during an invalidation are not cached */
+    private long invalidations = 0;
+
+    private WatchService watchService;
+
+    /** the folder the files are served from */
+    private final Path rootPath;
+
+    /**
+     * @param rootFolder
+     *            - the folder the files are served from, renaming it or any
+     *            directory below it invalidates the affected entries
+     */
+    public StaticFileCache(File rootFolder) {
+        rootPath = rootFolder.getAbsoluteFile().toPath().normalize();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            Thread watchThread = new Thread("CometVisu static file watcher") {
+                @Override
+                public void run() {
+                    processEvents();
+                }
+            };
+            watchThread.setDaemon(true);
+            watchThread.start();
+        } catch (IOException e) {
+            logger.warn("cannot watch the static files, caching is disabled: {}", e.getMessage());
+            watchService = null;
+        }
+    }
+
+    /**
+     * returns the metadata of the file, reading it from the filesystem only if
+     * it is not cached yet
+     */
+    public StaticFile get(File file) {
+        String key = file.getAbsolutePath();
+        synchronized (this) {
+            StaticFile cached = files.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // the directory has to be watched before the file is read, otherwise a change in between would go unnoticed
+        boolean watched = watchService != null && watchDirectories(file.getAbsoluteFile().getParentFile());
+        long generation;
+        synchronized (this) {
+            generation = invalidations;
+        }
+        StaticFile staticFile = new StaticFile(file);
+        if (watched && staticFile.exists()) {
+            synchronized (this) {
+                if (invalidations == generation) {
+                    files.put(key, staticFile);
+                    evict();
+                }
+            }
+        }
+        return staticFile;
+    }
+
+    /**
+     * @return the content of the file, or null if it is too large to be
+     *         kept in memory
+     */
+    public byte[] getContent(StaticFile staticFile) throws IOException {
+        byte[] content = staticFile.content;
+        if (content != null || !isCacheable(staticFile)) {
+            return content;
+        }
+        content = FileUtils.readFileToByteArray(staticFile.file);
+        addContent(staticFile, content, false);
+        return content;
+    }
+
+    /**
+     * @return the gzip compressed content of the file, or null if it is too
+     *         large to be kept in memory
+     */
+    public byte[] getGzipContent(StaticFile staticFile) throws IOException {
+        byte[] gzipContent = staticFile.gzipContent;
+        if (gzipContent != null || !isCacheable(staticFile)) {
+            return gzipContent;
+        }
+        byte[] content = getContent(staticFile);
+        if (content == null) {
+            return null;
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 2 + 64);
+        GZIPOutputStream gzip = new GZIPOutputStream(bos);
+        gzip.write(content);
+        gzip.close();
+        gzipContent = bos.toByteArray();
+        addContent(staticFile, gzipContent, true);
+        return gzipContent;
+    }
+
+    private boolean isCacheable(StaticFile staticFile) {
+        return watchService != null && staticFile.exists && staticFile.length <= MAX_CONTENT_SIZE;
+    }
+
+    private synchronized void addContent(StaticFile staticFile, byte[] content, boolean gzip) {
+        if (files.get(staticFile.file.getAbsolutePath()) != staticFile) {
+            // the entry has been invalidated in the meantime
+            return;
+        }
+        if (gzip) {
+            if (staticFile.gzipContent != null) {
+                return;
+            }
+            staticFile.gzipContent = content;
+        } else {
+            if (staticFile.content != null) {
+                return;
+            }
+            staticFile.content = content;
+        }
+        totalContentSize += content.length;
+        evict();
+    }
+
+    private void evict() {
+        Iterator<StaticFile> it = files.values().iterator();
+        while ((files.size() > MAX_ENTRIES || totalContentSize > MAX_TOTAL_CONTENT_SIZE) && it.hasNext()) {
+            totalContentSize -= it.next().getContentSize();
+            it.remove();
+        }
+    }
+
+    private synchronized void invalidate(String key) {
+        invalidations++;
+        StaticFile removed = files.remove(key);
+        if (removed != null) {
+            totalContentSize -= removed.getContentSize();
+        }
+    }
+
+    /**
+     * invalidates all entries below the given path if it is, or was, a
+     * watched directory or one of its ancestors, and stops watching the
+     * directories below it, as their watch keys now refer to other paths
+     */
+    private synchronized void invalidateDirectory(Path path) {
+        boolean watched = false;
+        Iterator<Map.Entry<WatchKey, Path>> keys = watchedDirectories.entrySet().iterator();
+        while (keys.hasNext()) {
+            Map.Entry<WatchKey, Path> entry = keys.next();
+            if (entry.getValue().startsWith(path)) {
+                entry.getKey().cancel();
+                watchKeys.remove(entry.getValue());
+                keys.remove();
+                watched = true;
+            }
+        }
+        if (!watched) {
+            return;
+        }
+        invalidations++;
+        String prefix = path.toFile().getAbsolutePath() + File.separator;
+        Iterator<Map.Entry<String, StaticFile>> it = files.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, StaticFile> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                totalContentSize -= entry.getValue().getContentSize();
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized void invalidateAll() {
+        invalidations++;
+        files.clear();
+        totalContentSize = 0;
+    }
+
+    /**
+     * watches the directory and, if it is below the root folder, all
+     * directories up to the parent of the root folder
+     */
+    private boolean watchDirectories(File directory) {
+        if (directory == null) {
+            return false;
+        }
+        Path path = directory.toPath().normalize();
+        if (!path.startsWith(rootPath)) {
+            return watch(directory);
+        }
+        for (Path dir = path; dir != null; dir = dir.getParent()) {
+            if (!watch(dir.toFile())) {
+                return false;
+            }
+            if (dir.equals(rootPath)) {
+                Path parent = dir.getParent();
+                return parent == null || watch(parent.toFile());
+            }
+        }
+        return true;
+    }
+
+    private synchronized boolean watch(File directory) {
+        if (directory == null || !directory.isDirectory()) {
+            return false;
+        }
+        Path path = directory.toPath();
+        if (watchKeys.containsKey(path)) {
+            return true;
+        }
+        try {
+            WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchKeys.put(path, key);
+            watchedDirectories.put(key, path);
+            return true;
+        } catch (IOException e) {
+            logger.debug("cannot watch directory '{}': {}", directory, e.getMessage());
+            return false;
+        } catch (ClosedWatchServiceException e) {
+            return false;
+        }
+    }
+
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException e) {
+                return;
+            } catch (ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory;
+            synchronized (this) {
+                directory = watchedDirectories.get(key);
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                    invalidateAll();
+                    continue;
+                }
+                Path changedPath = directory.resolve((Path) event.context());
+                if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                    // a renamed or replaced directory keeps the watch keys of its subdirectories
+                    invalidateDirectory(changedPath);
+                }
+                String changed = changedPath.toFile().getAbsolutePath();
+                invalidate(changed);
+                if (changed.endsWith(".gz")) {
+                    // the precompressed variant belongs to the original file
+                    invalidate(changed.substring(0, changed.length() - 3));
+                }
+            }
+            if (!key.reset()) {
+                synchronized (this) {
+                    watchKeys.remove(watchedDirectories.remove(key));
+                }
+                invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * stops watching the files and clears the cache
+     */
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("error closing watch service: {}", e.getMessage());
+            }
+        }
+        synchronized (this) {
+            watchKeys.clear();
+            watchedDirectories.clear();
+        }
+        invalidateAll();
+    }
+
+    /**
+     * The metadata of a static file.
+     */
+    public static class StaticFile {
+        private final File file;
+        private final boolean exists;
+        private final long length;
+        private final long lastModified;
+        private final String eTag;
+        private final File gzipFile;
+        private final long gzipLength;
+
+        private volatile byte[] content;
+        private volatile byte[] gzipContent;
+
+        StaticFile(File file) {
+            this.file = file;
+            this.exists = file.exists();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.eTag = file.getName() + "_" + length + "_" + lastModified;
+            File gz = new File(file.getPath() + ".gz");
+            if (exists && gz.isFile() && gz.lastModified() >= lastModified) {
+                this.gzipFile = gz;
+                this.gzipLength = gz.length();
+            } else {
+                this.gzipFile = null;
+                this.gzipLength = 0;
+            }
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public boolean exists() {
+            return exists;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * @return the precompressed variant of the file, or null if there is
+         *         none which is up to date
+         */
+        public File getGzipFile() {
+            return gzipFile;
+        }
+
+        public long getGzipLength() {
+            return gzipLength;
+        }
+
+        private long getContentSize() {
+            byte[] c = content;
+            byte[] g = gzipContent;
+            return (c != null ? c.length : 0) + (g != null ? g.length : 0);
+        }
+    }
+}
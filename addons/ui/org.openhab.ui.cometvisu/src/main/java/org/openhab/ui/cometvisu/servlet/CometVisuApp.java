@@ -26,6 +26,8 @@ import org.eclipse.smarthome.model.sitemap.SitemapProvider;
 import org.eclipse.smarthome.ui.icon.IconProvider;
 import org.eclipse.smarthome.ui.items.ItemUIRegistry;
 import org.openhab.ui.cometvisu.internal.Config;
+import org.openhab.ui.cometvisu.internal.config.GeneratedConfigCache;
+import org.openhab.ui.cometvisu.internal.editor.dataprovider.DataProviderCache;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.http.HttpService;
@@ -55,6 +57,10 @@ public class CometVisuApp {
 
     private EventPublisher eventPublisher;
 
+    private final GeneratedConfigCache configCache = new GeneratedConfigCache();
+
+    private final DataProviderCache dataProviderCache = new DataProviderCache();
+
     static protected Map<String, QueryablePersistenceService> persistenceServices = new HashMap<String, QueryablePersistenceService>();
 
     protected void setEventPublisher(EventPublisher eventPublisher) {
@@ -88,14 +94,18 @@ public class CometVisuApp {
 
     public void addIconProvider(IconProvider iconProvider) {
         this.iconProviders.add(iconProvider);
+        configCache.invalidate();
     }
 
     public void removeIconProvider(IconProvider iconProvider) {
         this.iconProviders.remove(iconProvider);
+        configCache.invalidate();
     }
 
     protected void setItemRegistry(ItemRegistry itemRegistry) {
         this.itemRegistry = itemRegistry;
+        this.itemRegistry.addRegistryChangeListener(configCache);
+        this.itemRegistry.addRegistryChangeListener(dataProviderCache);
     }
 
     public ItemRegistry getItemRegistry() {
@@ -103,9 +113,25 @@ public class CometVisuApp {
     }
 
     protected void unsetItemRegistry(ItemRegistry itemRegistry) {
+        this.itemRegistry.removeRegistryChangeListener(configCache);
+        this.itemRegistry.removeRegistryChangeListener(dataProviderCache);
         this.itemRegistry = null;
     }
 
+    /**
+     * @return the cache of the configs generated from sitemaps
+     */
+    public GeneratedConfigCache getConfigCache() {
+        return configCache;
+    }
+
+    /**
+     * @return the cache of the editor data provider responses
+     */
+    public DataProviderCache getDataProviderCache() {
+        return dataProviderCache;
+    }
+
     public void setItemUIRegistry(ItemUIRegistry itemUIRegistry) {
         this.itemUIRegistry = itemUIRegistry;
     }
@@ -116,10 +142,12 @@ public class CometVisuApp {
 
     public void addSitemapProvider(SitemapProvider provider) {
         sitemapProviders.add(provider);
+        configCache.invalidate();
     }
 
     public void removeSitemapProvider(SitemapProvider provider) {
         sitemapProviders.remove(provider);
+        configCache.invalidate();
     }
 
     public ItemUIRegistry getItemUIRegistry() {
@@ -146,6 +174,16 @@ public class CometVisuApp {
             if (properties.get(Config.COMETVISU_WEBAPP_ALIAS_PROPERTY) != null) {
                 Config.COMETVISU_WEBAPP_ALIAS = (String) properties.get(Config.COMETVISU_WEBAPP_ALIAS_PROPERTY);
             }
+            if (properties.get(Config.COMETVISU_BATCH_WINDOW_PROPERTY) != null) {
+                try {
+                    Config.COMETVISU_BATCH_WINDOW = Long
+                            .parseLong(properties.get(Config.COMETVISU_BATCH_WINDOW_PROPERTY).toString().trim());
+                } catch (NumberFormatException e) {
+                    logger.warn("invalid value '{}' for {}, using {}ms",
+                            properties.get(Config.COMETVISU_BATCH_WINDOW_PROPERTY),
+                            Config.COMETVISU_BATCH_WINDOW_PROPERTY, Config.COMETVISU_BATCH_WINDOW);
+                }
+            }
             for (String key : properties.keySet()) {
                 String[] parts = key.split(">");
                 String propKey = parts.length > 1 ? parts[1] : parts[0];
@@ -179,6 +217,7 @@ public class CometVisuApp {
 
     public void deactivate(BundleContext componentContext) {
         unregisterServlet();
+        dataProviderCache.close();
         logger.info("Stopped CometVisu UI");
     }
 
@@ -223,6 +262,9 @@ public class CometVisuApp {
             unregisterServlet();
         }
         readConfiguration(configProps);
+        // icon mappings are part of the generated configs
+        configCache.invalidate();
+        dataProviderCache.invalidate();
         if (configProps.containsKey(Config.COMETVISU_WEBFOLDER_PROPERTY)
                 || configProps.containsKey(Config.COMETVISU_WEBAPP_ALIAS_PROPERTY)) {
             registerServlet();
@@ -9,25 +9,28 @@ package org.openhab.ui.cometvisu.servlet;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
+import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map.Entry;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
@@ -42,6 +45,8 @@ import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.core.MediaType;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
 import org.eclipse.smarthome.core.items.Item;
 import org.eclipse.smarthome.core.items.ItemNotFoundException;
 import org.eclipse.smarthome.core.items.events.ItemEventFactory;
@@ -56,9 +61,11 @@ import org.eclipse.smarthome.model.sitemap.SitemapProvider;
 import org.openhab.ui.cometvisu.internal.Config;
 import org.openhab.ui.cometvisu.internal.config.ConfigHelper.Transform;
 import org.openhab.ui.cometvisu.internal.config.VisuConfig;
+import org.openhab.ui.cometvisu.internal.editor.dataprovider.DataProviderCache;
 import org.openhab.ui.cometvisu.internal.editor.dataprovider.beans.DataBean;
 import org.openhab.ui.cometvisu.internal.editor.dataprovider.beans.ItemBean;
-import org.openhab.ui.cometvisu.internal.rrs.beans.Feed;
+import org.openhab.ui.cometvisu.internal.util.StaticFileCache;
+import org.openhab.ui.cometvisu.internal.util.StaticFileCache.StaticFile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -87,6 +94,7 @@ import com.caucho.vfs.Path;
 import com.caucho.vfs.Vfs;
 import com.caucho.vfs.WriteStream;
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Servlet for CometVisu static + php files
@@ -118,7 +126,9 @@ public class CometVisuServlet extends HttpServlet {
 
     private String rrsLogPath = "/plugins/rsslog/rsslog_oh.php";
     private final String rssLogMessageSeparator = "\\|";
-    private DateFormat rssPubDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
+    private static final String RSS_PUB_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss Z";
+    private static final int DEFAULT_RSS_LOG_LIMIT = 25;
+    private static final int MAX_RSS_LOG_LIMIT = 1000;
 
     protected String root;
     protected File rootFolder;
@@ -132,9 +142,12 @@ public class CometVisuServlet extends HttpServlet {
 
     private CometVisuApp cometVisuApp;
 
+    private final StaticFileCache staticFileCache;
+
     public CometVisuServlet(String filesystemDir, CometVisuApp cometVisuApp) {
         root = filesystemDir;
         rootFolder = new File(root);
+        staticFileCache = new StaticFileCache(rootFolder);
         userFileFolder = new File(org.eclipse.smarthome.config.core.ConfigConstants.getConfigFolder()
                 + Config.COMETVISU_WEBAPP_USERFILE_FOLDER);
         defaultUserDir = System.getProperty("user.dir");
@@ -173,6 +186,15 @@ public class CometVisuServlet extends HttpServlet {
         engine.getQuercus().start();
     }
 
+    /**
+     * stop watching the static files
+     */
+    @Override
+    public void destroy() {
+        staticFileCache.close();
+        super.destroy();
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -224,12 +246,21 @@ public class CometVisuServlet extends HttpServlet {
             if (!requestedFile.exists()) {
                 Sitemap sitemap = getSitemap(matcher.group(2));
                 if (sitemap != null) {
-                    logger.debug("reading sitemap '{}'", sitemap);
-                    VisuConfig config = new VisuConfig(sitemap, cometVisuApp, rootFolder);
+                    int requestFolders = VisuConfig.getRequestFolders(req);
+                    String configXml = cometVisuApp.getConfigCache().get(sitemap, requestFolders);
+                    if (configXml == null) {
+                        logger.debug("reading sitemap '{}'", sitemap);
+                        long generation = cometVisuApp.getConfigCache().getGeneration();
+                        VisuConfig config = new VisuConfig(sitemap, cometVisuApp, rootFolder);
+                        configXml = config.getConfigXml(req);
+                        if (!configXml.isEmpty()) {
+                            cometVisuApp.getConfigCache().put(sitemap, requestFolders, configXml, generation);
+                        }
+                    }
 
                     // logger.info("response: "+config.getConfigXml());
                     resp.setContentType(MediaType.APPLICATION_XML);
-                    resp.getWriter().write(config.getConfigXml(req));
+                    resp.getWriter().write(configXml);
                     resp.flushBuffer();
 
                     return;
@@ -351,122 +382,91 @@ public class CometVisuServlet extends HttpServlet {
                         "Cannot execute query: It is not possible to delete data from openHAB PersistenceService");
                 response.flushBuffer();
             } else {
-                Feed feed = new Feed();
-                feed.feedUrl = request.getRequestURL().toString();
-                feed.title = "RSS supplied logs";
-                feed.link = request.getRequestURL().toString();
-                feed.author = "";
-                feed.description = "RSS supplied logs";
-                feed.type = "rss20";
+                int limit = getRssLogLimit(request.getParameter("limit"));
                 // Define the data filter
                 FilterCriteria filter = new FilterCriteria();
                 Calendar start = Calendar.getInstance();
                 // retrieve only the historic states from the last 7 days + BeginDate is required for RRD4j service
                 start.add(Calendar.DAY_OF_YEAR, -7);
-                // Date end = new Date();
                 filter.setBeginDate(start.getTime());
-                // filter.setEndDate(end);
-                filter.setPageSize(25);
-                filter.setOrdering(Ordering.DESCENDING);
-
-                for (Item item : items) {
-                    filter.setItemName(item.getName());
-                    Iterator<Entry<String, QueryablePersistenceService>> pit = CometVisuApp.getPersistenceServices()
-                            .entrySet().iterator();
-                    QueryablePersistenceService persistenceService = pit.next().getValue();
-                    // Get the data from the persistence store
-                    Iterable<HistoricItem> result = persistenceService.query(filter);
-                    Iterator<HistoricItem> it = result.iterator();
-                    boolean forceStop = false;
-                    while (!forceStop && !it.hasNext()) {
-                        if (pit.hasNext()) {
-                            persistenceService = pit.next().getValue();
-                            result = persistenceService.query(filter);
-                        } else {
-                            // no persisted data found for this item in any of
-                            // the available persistence services
-                            forceStop = true;
-                        }
-                    }
-                    if (it.hasNext()) {
-                        logger.debug("persisted data for item {} found in service {}", item.getName(),
-                                persistenceService.getName());
-                    }
-
-                    // Iterate through the data
-                    int i = 0;
-                    while (it.hasNext()) {
-                        i++;
-                        HistoricItem historicItem = it.next();
-                        if (historicItem.getState() == null || historicItem.getState().toString().isEmpty())
-                            continue;
-                        org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry = new org.openhab.ui.cometvisu.internal.rrs.beans.Entry();
-                        entry.publishedDate = historicItem.getTimestamp().getTime();
-                        logger.info(rssPubDateFormat.format(entry.publishedDate) + ": " + historicItem.getState());
-                        entry.tags = historicItem.getName();
-                        String[] content = historicItem.getState().toString().split(rssLogMessageSeparator);
-                        if (content.length == 0) {
-                            entry.content = historicItem.getState().toString();
-                        } else if (content.length == 1) {
-                            entry.content = content[0];
-                        } else if (content.length == 2) {
-                            entry.title = content[0];
-                            entry.content = content[1];
-                        } else if (content.length == 3) {
-                            entry.title = content[0];
-                            entry.content = content[1];
-                            entry.state = content[2];
-                        } else if (content.length == 4) {
-                            entry.title = content[0];
-                            entry.content = content[1];
-                            entry.state = content[2];
-                            // ignore tags in content[3] as is is already known
-                            // by item name
-                        }
-                        feed.entries.add(entry);
+                if (request.getParameter("before") != null) {
+                    // continue a previous page with the entries older than its last one
+                    try {
+                        filter.setEndDate(new Date(Long.parseLong(request.getParameter("before")) - 1));
+                    } catch (NumberFormatException e) {
+                        logger.debug("ignoring invalid rsslog cursor '{}'", request.getParameter("before"));
                     }
-                    if ("rrd4j".equals(persistenceService.getName())
-                            && FilterCriteria.Ordering.DESCENDING.equals(filter.getOrdering())) {
-                        // the RRD4j PersistenceService does not support descending ordering so we do it manually
-                        Collections.sort(feed.entries,
-                                new Comparator<org.openhab.ui.cometvisu.internal.rrs.beans.Entry>() {
-                                    @Override
-                                    public int compare(org.openhab.ui.cometvisu.internal.rrs.beans.Entry o1,
-                                            org.openhab.ui.cometvisu.internal.rrs.beans.Entry o2) {
-                                        return Long.compare(o2.publishedDate, o1.publishedDate);
-                                    }
-                                });
-                    }
-                    logger.debug("querying {} item from {} to {} => {} results on service {}", filter.getItemName(),
-                            filter.getBeginDate(), filter.getEndDate(), i, persistenceService.getName());
                 }
-                if (request.getParameter("j") != null) {
+                filter.setPageSize(limit);
+                filter.setOrdering(Ordering.DESCENDING);
+
+                boolean json = request.getParameter("j") != null;
+                String feedUrl = request.getRequestURL().toString();
+                DateFormat pubDateFormat = new SimpleDateFormat(RSS_PUB_DATE_FORMAT, Locale.ENGLISH);
+                PrintWriter writer;
+                JsonWriter jsonWriter = null;
+                Gson gson = new Gson();
+                if (json) {
                     // request data in JSON format
                     response.setContentType("application/json");
-                    response.getWriter().write("{\"responseData\": { \"feed\": " + marshalJson(feed)
-                            + "},\"responseDetails\":null,\"responseStatus\":200}");
+                    writer = response.getWriter();
+                    jsonWriter = new JsonWriter(writer);
+                    jsonWriter.beginObject().name("responseData").beginObject().name("feed").beginObject();
+                    jsonWriter.name("feedUrl").value(feedUrl);
+                    jsonWriter.name("title").value("RSS supplied logs");
+                    jsonWriter.name("link").value(feedUrl);
+                    jsonWriter.name("author").value("");
+                    jsonWriter.name("description").value("RSS supplied logs");
+                    jsonWriter.name("type").value("rss20");
+                    jsonWriter.name("entries").beginArray();
                 } else {
                     // request data in RSS format
                     response.setContentType(MediaType.APPLICATION_ATOM_XML);
+                    writer = response.getWriter();
                     // as the json bean structure does not map the rss structure
                     // we cannot just marshal an XML
-                    String rss = "<?xml version=\"1.0\"?>\n<rss version=\"2.0\">\n<channel>\n";
-                    rss += "<title>" + feed.title + "</title>\n";
-                    rss += "<link>" + feed.link + "</link>\n";
-                    rss += "<desrciption>" + feed.description + "</desription>\n";
-
-                    for (org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry : feed.entries) {
-                        rss += "<item>";
-                        rss += "<title>" + entry.title + "</title>";
-                        rss += "<description>" + entry.content + "</description>";
-                        Date pubDate = new Date(entry.publishedDate);
-                        rss += "<pubDate>" + rssPubDateFormat.format(pubDate) + "</pubDate>";
-                        rss += "</item>\n";
-                    }
+                    writer.write("<?xml version=\"1.0\"?>\n<rss version=\"2.0\">\n<channel>\n");
+                    writer.write("<title>RSS supplied logs</title>\n");
+                    writer.write("<link>" + StringEscapeUtils.escapeXml(feedUrl) + "</link>\n");
+                    writer.write("<description>RSS supplied logs</description>\n");
+                }
 
-                    rss += "</channel></rss>";
-                    response.getWriter().write(rss);
+                for (Item item : items) {
+                    filter.setItemName(item.getName());
+                    // the entries are written while they are read, so only
+                    // one entry of the log is held in memory at a time
+                    int count = 0;
+                    Iterator<HistoricItem> it = queryRssLog(filter, limit);
+                    while (count < limit && it.hasNext()) {
+                        org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry = createRssLogEntry(it.next());
+                        if (entry == null) {
+                            continue;
+                        }
+                        count++;
+                        if (json) {
+                            gson.toJson(entry, org.openhab.ui.cometvisu.internal.rrs.beans.Entry.class, jsonWriter);
+                        } else {
+                            writer.write("<item><title>");
+                            writer.write(StringUtils.defaultString(StringEscapeUtils.escapeXml(entry.title)));
+                            writer.write("</title><description>");
+                            writer.write(StringUtils.defaultString(StringEscapeUtils.escapeXml(entry.content)));
+                            writer.write("</description><pubDate>");
+                            writer.write(pubDateFormat.format(new Date(entry.publishedDate)));
+                            writer.write("</pubDate></item>\n");
+                        }
+                    }
+                    logger.debug("querying {} item from {} to {} => {} results", filter.getItemName(),
+                            filter.getBeginDate(), filter.getEndDate(), count);
+                }
 
+                if (json) {
+                    jsonWriter.endArray().endObject().endObject();
+                    jsonWriter.name("responseDetails").nullValue();
+                    jsonWriter.name("responseStatus").value(200);
+                    jsonWriter.endObject();
+                    jsonWriter.flush();
+                } else {
+                    writer.write("</channel></rss>");
                 }
                 response.flushBuffer();
 
@@ -475,6 +475,91 @@ public class CometVisuServlet extends HttpServlet {
 
     }
 
+    private int getRssLogLimit(String limit) {
+        if (limit != null) {
+            try {
+                int value = Integer.parseInt(limit);
+                if (value > 0) {
+                    return Math.min(value, MAX_RSS_LOG_LIMIT);
+                }
+            } catch (NumberFormatException e) {
+                logger.debug("ignoring invalid rsslog limit '{}'", limit);
+            }
+        }
+        return DEFAULT_RSS_LOG_LIMIT;
+    }
+
+    /**
+     * queries the log entries of the item from the first persistence service
+     * which has persisted data for it
+     *
+     * @return the entries in descending order
+     */
+    private Iterator<HistoricItem> queryRssLog(FilterCriteria filter, int limit) {
+        for (QueryablePersistenceService persistenceService : CometVisuApp.getPersistenceServices().values()) {
+            if ("rrd4j".equals(persistenceService.getName())) {
+                // the RRD4j PersistenceService does not support descending
+                // ordering, so only the newest entries are kept to reverse them
+                filter.setOrdering(Ordering.ASCENDING);
+                filter.setPageSize(Integer.MAX_VALUE);
+                Iterator<HistoricItem> it = persistenceService.query(filter).iterator();
+                filter.setOrdering(Ordering.DESCENDING);
+                filter.setPageSize(limit);
+                if (!it.hasNext()) {
+                    continue;
+                }
+                ArrayDeque<HistoricItem> newest = new ArrayDeque<HistoricItem>(limit);
+                while (it.hasNext()) {
+                    if (newest.size() == limit) {
+                        newest.removeFirst();
+                    }
+                    newest.addLast(it.next());
+                }
+                logger.debug("persisted data for item {} found in service {}", filter.getItemName(),
+                        persistenceService.getName());
+                return newest.descendingIterator();
+            }
+            Iterator<HistoricItem> it = persistenceService.query(filter).iterator();
+            if (it.hasNext()) {
+                logger.debug("persisted data for item {} found in service {}", filter.getItemName(),
+                        persistenceService.getName());
+                return it;
+            }
+        }
+        // no persisted data found for this item in any of the available
+        // persistence services
+        return Collections.<HistoricItem> emptyList().iterator();
+    }
+
+    /**
+     * @return the log entry stored in the state of the historic item, or null
+     *         if the state is empty
+     */
+    private org.openhab.ui.cometvisu.internal.rrs.beans.Entry createRssLogEntry(HistoricItem historicItem) {
+        if (historicItem.getState() == null || historicItem.getState().toString().isEmpty()) {
+            return null;
+        }
+        org.openhab.ui.cometvisu.internal.rrs.beans.Entry entry = new org.openhab.ui.cometvisu.internal.rrs.beans.Entry();
+        entry.publishedDate = historicItem.getTimestamp().getTime();
+        entry.tags = historicItem.getName();
+        String[] content = historicItem.getState().toString().split(rssLogMessageSeparator);
+        if (content.length == 0) {
+            entry.content = historicItem.getState().toString();
+        } else if (content.length == 1) {
+            entry.content = content[0];
+        } else if (content.length == 2) {
+            entry.title = content[0];
+            entry.content = content[1];
+        } else if (content.length >= 3) {
+            entry.title = content[0];
+            entry.content = content[1];
+            entry.state = content[2];
+            // ignore tags in content[3] as is is already known
+            // by item name
+        }
+        return entry;
+    }
+
     /**
      * Process the actual request.
      *
@@ -518,7 +603,8 @@ public class CometVisuServlet extends HttpServlet {
             file = new File(rootFolder, URLDecoder.decode(requestedFile, "UTF-8"));
         }
         // Check if file actually exists in filesystem.
-        if (!file.exists()) {
+        StaticFile staticFile = staticFileCache.get(file);
+        if (!staticFile.exists()) {
             // Do your thing if the file appears to be non-existing.
             // Throw an exception, or send 404, or show default/warning page, or
             // just ignore it.
@@ -528,9 +614,9 @@ public class CometVisuServlet extends HttpServlet {
 
         // Prepare some variables. The ETag is an unique identifier of the file.
         String fileName = file.getName();
-        long length = file.length();
-        long lastModified = file.lastModified();
-        String eTag = fileName + "_" + length + "_" + lastModified;
+        long length = staticFile.getLength();
+        long lastModified = staticFile.getLastModified();
+        String eTag = staticFile.getETag();
         long expires = System.currentTimeMillis() + DEFAULT_EXPIRE_TIME;
 
         // Validate request headers for caching
@@ -656,6 +742,7 @@ public class CometVisuServlet extends HttpServlet {
         // Get content type by file name and set default GZIP support and
         // content disposition.
         String contentType = getServletContext().getMimeType(fileName);
+        String acceptEncoding = request.getHeader("Accept-Encoding");
         boolean acceptsGzip = false;
         String disposition = "inline";
 
@@ -672,7 +759,6 @@ public class CometVisuServlet extends HttpServlet {
         // the browser and expand content type with the one and right character
         // encoding.
         if (contentType.startsWith("text")) {
-            String acceptEncoding = request.getHeader("Accept-Encoding");
             acceptsGzip = acceptEncoding != null && accepts(acceptEncoding, "gzip");
             contentType += ";charset=UTF-8";
         }
@@ -695,16 +781,25 @@ public class CometVisuServlet extends HttpServlet {
         response.setDateHeader("Last-Modified", lastModified);
         response.setDateHeader("Expires", expires);
 
+        // A precompressed variant is served for the full file only, as ranges
+        // refer to the uncompressed content.
+        File gzipFile = null;
+        if (staticFile.getGzipFile() != null && acceptEncoding != null && accepts(acceptEncoding, "gzip")) {
+            gzipFile = staticFile.getGzipFile();
+        }
+        if (acceptsGzip || staticFile.getGzipFile() != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+
         // Send requested file (part(s)) to client
         // ------------------------------------------------
 
         // Prepare streams.
-        RandomAccessFile input = null;
+        FileChannel input = null;
         OutputStream output = null;
 
         try {
             // Open streams.
-            input = new RandomAccessFile(file, "r");
             output = response.getOutputStream();
 
             if (ranges.isEmpty() || ranges.get(0) == full) {
@@ -715,20 +810,39 @@ public class CometVisuServlet extends HttpServlet {
                 response.setHeader("Content-Range", "bytes " + r.start + "-" + r.end + "/" + r.total);
 
                 if (content) {
-                    if (acceptsGzip) {
+                    if (gzipFile != null) {
+                        // The browser accepts GZIP and the file has been
+                        // compressed in advance, so send the compressed file.
+                        response.setHeader("Content-Encoding", "gzip");
+                        response.setHeader("Content-Length", String.valueOf(staticFile.getGzipLength()));
+                        input = new FileInputStream(gzipFile).getChannel();
+                        copy(input, output, 0, staticFile.getGzipLength());
+                    } else if (acceptsGzip) {
                         // The browser accepts GZIP, so GZIP the content.
                         response.setHeader("Content-Encoding", "gzip");
-                        output = new GZIPOutputStream(output, DEFAULT_BUFFER_SIZE);
+                        byte[] gzipContent = staticFileCache.getGzipContent(staticFile);
+                        if (gzipContent != null) {
+                            response.setHeader("Content-Length", String.valueOf(gzipContent.length));
+                            output.write(gzipContent);
+                        } else {
+                            // Content length is not directly predictable in
+                            // case of GZIP. So only add it if the compressed
+                            // content is known, else browser will hang.
+                            output = new GZIPOutputStream(output, DEFAULT_BUFFER_SIZE);
+                            input = new FileInputStream(file).getChannel();
+                            copy(input, output, r.start, r.length);
+                        }
                     } else {
-                        // Content length is not directly predictable in case of
-                        // GZIP.
-                        // So only add it if there is no means of GZIP, else
-                        // browser will hang.
                         response.setHeader("Content-Length", String.valueOf(r.length));
+                        byte[] fileContent = staticFileCache.getContent(staticFile);
+                        if (fileContent != null) {
+                            output.write(fileContent);
+                        } else {
+                            // Copy full range.
+                            input = new FileInputStream(file).getChannel();
+                            copy(input, output, r.start, r.length);
+                        }
                     }
-
-                    // Copy full range.
-                    copy(input, output, r.start, r.length);
                 }
 
             } else if (ranges.size() == 1) {
@@ -742,6 +856,7 @@ public class CometVisuServlet extends HttpServlet {
 
                 if (content) {
                     // Copy single part range.
+                    input = new FileInputStream(file).getChannel();
                     copy(input, output, r.start, r.length);
                 }
 
@@ -755,6 +870,7 @@ public class CometVisuServlet extends HttpServlet {
                     // Cast back to ServletOutputStream to get the easy println
                     // methods.
                     ServletOutputStream sos = (ServletOutputStream) output;
+                    input = new FileInputStream(file).getChannel();
 
                     // Copy multi part range.
                     for (Range r : ranges) {
@@ -851,7 +967,30 @@ public class CometVisuServlet extends HttpServlet {
     private final void dataProviderService(File file, HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         logger.debug("dataprovider '{}' requested", file.getName());
-        List<Object> beans = new ArrayList<Object>();
+        DataProviderCache cache = cometVisuApp.getDataProviderCache();
+        String json = cache.get(file.getName());
+        if (json == null) {
+            long generation = cache.getGeneration();
+            List<Object> beans = new ArrayList<Object>();
+            boolean cacheable = buildDataProvider(file, beans, cache);
+            json = marshalJson(beans);
+            if (cacheable) {
+                cache.put(file.getName(), json, generation);
+            }
+        }
+        response.setContentType(MediaType.APPLICATION_JSON);
+        response.getWriter().write(json);
+        response.flushBuffer();
+    }
+
+    /**
+     * adds the beans of the requested data provider to <code>beans</code>
+     *
+     * @return false if the directory the beans are read from cannot be
+     *         watched for changes, so the response must not be cached
+     */
+    private boolean buildDataProvider(File file, List<Object> beans, DataProviderCache cache) {
+        boolean cacheable = true;
         if (file.getName().equals("dpt_list.json")) {
             // return all transforms available for openhab
             for (Transform transform : Transform.values()) {
@@ -874,6 +1013,7 @@ public class CometVisuServlet extends HttpServlet {
         } else if (file.getName().equals("list_all_icons.php")) {
             // all item names
             File iconDir = new File(rootFolder, "icon/knx-uf-iconset/128x128_white/");
+            cacheable = cache.watch(iconDir);
             FilenameFilter filter = new FilenameFilter() {
                 @Override
                 public boolean accept(File dir, String name) {
@@ -894,6 +1034,7 @@ public class CometVisuServlet extends HttpServlet {
             // all plugins
             // all item names
             File iconDir = new File(rootFolder, "plugins/");
+            cacheable = cache.watch(iconDir);
             for (File icon : iconDir.listFiles()) {
                 if (icon.isDirectory()) {
                     DataBean bean = new DataBean();
@@ -906,6 +1047,7 @@ public class CometVisuServlet extends HttpServlet {
         } else if (file.getName().equals("get_designs.php")) {
             // all designs
             File designDir = new File(rootFolder, "designs/");
+            cacheable = cache.watch(designDir);
             for (File design : designDir.listFiles()) {
                 if (design.isDirectory()) {
                     beans.add(design.getName());
@@ -916,9 +1058,7 @@ public class CometVisuServlet extends HttpServlet {
             // all item names
 
         }
-        response.setContentType(MediaType.APPLICATION_JSON);
-        response.getWriter().write(marshalJson(beans));
-        response.flushBuffer();
+        return cacheable;
     }
 
     private String marshalJson(Object bean) {
@@ -1205,7 +1345,9 @@ public class CometVisuServlet extends HttpServlet {
     }
 
     /**
-     * Copy the given byte range of the given input to the given output.
+     * Copy the given byte range of the given input to the given output. The
+     * bytes are transferred by the channel, which avoids copying them through
+     * a heap buffer where the output supports it.
      *
      * @param input
      *            The input to copy the given range to the given output for.
@@ -1218,28 +1360,17 @@ public class CometVisuServlet extends HttpServlet {
      * @throws IOException
      *             If something fails at I/O level.
      */
-    private static void copy(RandomAccessFile input, OutputStream output, long start, long length) throws IOException {
-        byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-        int read;
-
-        if (input.length() == length) {
-            // Write full range.
-            while ((read = input.read(buffer)) > 0) {
-                output.write(buffer, 0, read);
-            }
-        } else {
-            // Write partial range.
-            input.seek(start);
-            long toRead = length;
-
-            while ((read = input.read(buffer)) > 0) {
-                if ((toRead -= read) > 0) {
-                    output.write(buffer, 0, read);
-                } else {
-                    output.write(buffer, 0, (int) toRead + read);
-                    break;
-                }
+    private static void copy(FileChannel input, OutputStream output, long start, long length) throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long position = start;
+        long end = start + length;
+        while (position < end) {
+            long transferred = input.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                // the file has been truncated in the meantime
+                break;
             }
+            position += transferred;
         }
     }
 
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.actions;
+
+import static org.junit.Assert.*;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PingTest {
+
+    private ServerSocket serverSocket;
+
+    private String openTarget;
+
+    private String closedTarget;
+
+    @Before
+    public void setUp() throws Exception {
+        serverSocket = new ServerSocket(0);
+        openTarget = "127.0.0.1:" + serverSocket.getLocalPort();
+        // a port which has just been released is closed
+        ServerSocket closed = new ServerSocket(0);
+        closedTarget = "127.0.0.1:" + closed.getLocalPort();
+        closed.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        serverSocket.close();
+    }
+
+    @Test
+    public void testResultsOfAllTargets() throws Exception {
+        Map<String, Boolean> results = Ping.checkVitality(
+                Arrays.asList(openTarget, "localhost:" + serverSocket.getLocalPort(), closedTarget, "no-port"), 2000);
+
+        assertEquals(Arrays.asList(openTarget, "localhost:" + serverSocket.getLocalPort(), closedTarget, "no-port"),
+                new ArrayList<String>(results.keySet()));
+        assertTrue(results.get(openTarget));
+        assertTrue(results.get("localhost:" + serverSocket.getLocalPort()));
+        assertFalse(results.get(closedTarget));
+        assertFalse(results.get("no-port"));
+    }
+
+    @Test
+    public void testUnresolvableHostsAreBoundedByTheTimeout() throws Exception {
+        final List<String> reported = new ArrayList<String>();
+        long start = System.currentTimeMillis();
+        Ping.checkVitality(Arrays.asList("unknown-host.invalid:80", openTarget), 500, new Ping.VitalityCallback() {
+            @Override
+            public void onResult(String target, boolean reachable) {
+                reported.add(target + "=" + reachable);
+            }
+        });
+        long duration = System.currentTimeMillis() - start;
+
+        // the reachable target does not wait for the lookup of the other one
+        assertEquals(openTarget + "=true", reported.get(0));
+        assertTrue(reported.contains("unknown-host.invalid:80=false"));
+        assertEquals(2, reported.size());
+        assertTrue("took " + duration + "ms", duration < 1500);
+    }
+
+}
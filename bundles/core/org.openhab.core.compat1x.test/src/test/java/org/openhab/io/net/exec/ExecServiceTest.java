@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.exec;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExecServiceTest {
+
+    private ExecService service;
+
+    @Before
+    public void setUp() {
+        // the commands used below are only available on unix like systems
+        assumeFalse(System.getProperty("os.name").toLowerCase().startsWith("windows"));
+    }
+
+    @After
+    public void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    public void testOutputIsReturnedAsWritten() {
+        service = new ExecService(2, 2);
+        ExecResult result = service.execute("sh@@-c@@printf 'a\\r\\nb\\n\\n'", 5000, 0);
+        assertNotNull(result);
+        assertEquals(0, result.getExitCode());
+        assertFalse(result.isTimedOut());
+        assertEquals("a\r\nb\n", result.getOutput());
+    }
+
+    @Test
+    public void testStandardErrorIsPartOfTheOutput() {
+        service = new ExecService(2, 2);
+        ExecResult result = service.execute("sh@@-c@@echo error 1>&2", 5000, 0);
+        assertNotNull(result);
+        assertEquals("error", result.getOutput());
+    }
+
+    @Test
+    public void testCommandsAreQueuedAndRejected() throws Exception {
+        service = new ExecService(1, 1);
+        Future<ExecResult> running = service.submit("sleep 1", 5000, null);
+        Future<ExecResult> queued = service.submit("sleep 1", 5000, null);
+        assertNotNull(running);
+        assertNotNull(queued);
+        assertNull(service.submit("sleep 1", 5000, null));
+        assertEquals(1, service.getRejectedCount());
+        assertEquals(1, service.getQueuedCount());
+
+        assertFalse(running.get().isTimedOut());
+        assertFalse(queued.get().isTimedOut());
+        assertEquals(2, service.getSubmittedCount());
+        assertEquals(2, service.getCompletedCount());
+    }
+
+    @Test
+    public void testTimeout() {
+        service = new ExecService(1, 1);
+        long start = System.currentTimeMillis();
+        ExecResult result = service.execute("sleep 10", 200, 0);
+        assertNotNull(result);
+        assertTrue(result.isTimedOut());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(1, service.getTimedOutCount());
+    }
+
+    @Test
+    public void testConcurrentCallsShareOneExecution() throws Exception {
+        service = new ExecService(4, 10);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<String> outputs = new ArrayList<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    ExecResult result = service.execute("sh@@-c@@sleep 0.5; echo $$", 5000, 10000);
+                    synchronized (outputs) {
+                        outputs.add(result != null ? result.getOutput() : null);
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, service.getSubmittedCount());
+        assertEquals(7, service.getCacheHitCount());
+        assertEquals(8, outputs.size());
+        for (String output : outputs) {
+            assertNotNull(output);
+            assertEquals(outputs.get(0), output);
+        }
+
+        // served from the cache within its time to live
+        assertEquals(outputs.get(0), service.execute("sh@@-c@@sleep 0.5; echo $$", 5000, 10000).getOutput());
+        assertEquals(1, service.getSubmittedCount());
+    }
+
+    @Test
+    public void testExpiredResultIsExecutedAgain() throws Exception {
+        service = new ExecService(1, 1);
+        service.execute("echo cached", 5000, 50);
+        Thread.sleep(100);
+        service.execute("echo cached", 5000, 50);
+        assertEquals(2, service.getSubmittedCount());
+        assertEquals(0, service.getCacheHitCount());
+    }
+
+    @Test
+    public void testLaunchedCommandsDoNotOccupySlots() {
+        service = new ExecService(1, 1);
+        assertTrue(service.launch(ExecUtil.parseCommandLine("sleep 2")));
+        assertTrue(service.launch(ExecUtil.parseCommandLine("sleep 2")));
+        assertEquals(2, service.getLaunchedCount());
+
+        long start = System.currentTimeMillis();
+        ExecResult result = service.execute("echo ok", 5000, 0);
+        assertNotNull(result);
+        assertEquals("ok", result.getOutput());
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(0, service.getRejectedCount());
+    }
+
+    @Test
+    public void testLaunchedCommandsAreQueuedAndRejected() throws Exception {
+        service = new ExecService(1, 1, 2, 1, 5000);
+        assertTrue(service.launch(ExecUtil.parseCommandLine("sleep 1")));
+        assertTrue(service.launch(ExecUtil.parseCommandLine("sleep 1")));
+        assertTrue(service.launch(ExecUtil.parseCommandLine("sleep 1")));
+        assertFalse(service.launch(ExecUtil.parseCommandLine("sleep 1")));
+        assertEquals(3, service.getLaunchedCount());
+        assertEquals(1, service.getRejectedCount());
+        assertEquals(1, service.getQueuedLaunchedCount());
+
+        Thread.sleep(300);
+        assertEquals(2, service.getActiveLaunchedCount());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (service.getCompletedCount() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(3, service.getCompletedCount());
+    }
+
+    @Test
+    public void testLaunchedCommandsAreKilledAfterTheirTimeout() throws Exception {
+        service = new ExecService(1, 1, 1, 1, 200);
+        long start = System.currentTimeMillis();
+        assertTrue(service.launch(ExecUtil.parseCommandLine("sleep 10")));
+
+        while (service.getTimedOutCount() == 0 && System.currentTimeMillis() - start < 5000) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, service.getTimedOutCount());
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ProxySettingsTest {
+
+    @Test
+    public void testNoProxyConfigured() {
+        ProxySettings settings = ProxySettings.of(null, 8080, null, null, null);
+        assertFalse(settings.isEnabled());
+        assertFalse(settings.shouldUseProxy("http://www.openhab.org/"));
+    }
+
+    @Test
+    public void testNonProxyHosts() {
+        ProxySettings settings = ProxySettings.of("proxy", 8080, null, null,
+                "localhost|*.local|192.168.*|*intranet*");
+        assertTrue(settings.isEnabled());
+        assertEquals(8080, settings.getPort());
+
+        assertFalse(settings.shouldUseProxy("http://localhost:8080/rest"));
+        assertFalse(settings.shouldUseProxy("http://nas.local/"));
+        assertFalse(settings.shouldUseProxy("http://a.b.local/"));
+        assertFalse(settings.shouldUseProxy("http://192.168.0.10/"));
+        assertFalse(settings.shouldUseProxy("http://my-intranet-host/"));
+
+        assertTrue(settings.shouldUseProxy("http://local/"));
+        assertTrue(settings.shouldUseProxy("http://nas.LOCAL/"));
+        assertTrue(settings.shouldUseProxy("http://notlocal.org/"));
+        assertTrue(settings.shouldUseProxy("http://www.openhab.org/"));
+    }
+
+    @Test
+    public void testSettingsAreReused() {
+        ProxySettings first = ProxySettings.of("proxy", 8080, "user", "secret", "*.local");
+        assertSame(first, ProxySettings.of("proxy", 8080, "user", "secret", "*.local"));
+        assertNotSame(first, ProxySettings.of("proxy", 8081, "user", "secret", "*.local"));
+    }
+
+}
@@ -11,7 +11,10 @@ package org.openhab.core.compat1x.internal;
 import org.eclipse.smarthome.model.script.engine.ScriptEngine;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.transform.TransformationHelper;
 import org.openhab.io.multimedia.actions.Audio;
+import org.openhab.io.net.exec.ExecUtil;
+import org.openhab.io.net.http.HttpUtil;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
@@ -46,6 +49,8 @@ public class CompatibilityActivator implements BundleActivator {
 
         scriptEngineTracker = new ServiceTracker<ScriptEngine, ScriptEngine>(bundleContext, ScriptEngine.class, null);
         scriptEngineTracker.open();
+
+        TransformationHelper.open(bundleContext);
     }
 
     /*
@@ -59,7 +64,10 @@ public class CompatibilityActivator implements BundleActivator {
         itemRegistryTracker.close();
         eventPublisherTracker.close();
         scriptEngineTracker.close();
+        TransformationHelper.close();
         Audio.playStream(null);
+        HttpUtil.stopAsyncClient();
+        ExecUtil.shutdownExecService();
     }
 
 }
@@ -9,10 +9,15 @@
 package org.openhab.core.transform;
 
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,16 +25,109 @@ public class TransformationHelper {
 
 	private static Logger logger = LoggerFactory.getLogger(TransformationHelper.class);
 
+	private static final String TRANSFORM_PROPERTY = "smarthome.transform";
+
+	/** tracks all transformation services while the compatibility layer is active, read by rule threads without locking */
+	private static volatile ServiceTracker<org.eclipse.smarthome.core.transform.TransformationService, TransformationService> tracker;
+
+	/** the delegates of all tracked transformation services by their transformation type */
+	private static final ConcurrentMap<String, TransformationService> services = new ConcurrentHashMap<String, TransformationService>();
+
+	/**
+	 * Starts tracking the transformation services, so that
+	 * {@link #getTransformationService(BundleContext, String)} does not need
+	 * to query the service registry on every call.
+	 * 
+	 * @param context the bundle context used to track the services
+	 */
+	static public synchronized void open(final BundleContext context) {
+		close();
+		tracker = new ServiceTracker<org.eclipse.smarthome.core.transform.TransformationService, TransformationService>(
+				context, org.eclipse.smarthome.core.transform.TransformationService.class,
+				new ServiceTrackerCustomizer<org.eclipse.smarthome.core.transform.TransformationService, TransformationService>() {
+
+					@Override
+					public TransformationService addingService(ServiceReference<org.eclipse.smarthome.core.transform.TransformationService> reference) {
+						org.eclipse.smarthome.core.transform.TransformationService service = context.getService(reference);
+						if (service == null) {
+							return null;
+						}
+						TransformationService delegate = new TransformationServiceDelegate(service);
+						String type = getType(reference);
+						if (type != null && !services.containsKey(type)) {
+							services.put(type, delegate);
+						}
+						return delegate;
+					}
+
+					@Override
+					public void modifiedService(ServiceReference<org.eclipse.smarthome.core.transform.TransformationService> reference,
+							TransformationService delegate) {
+						String type = getType(reference);
+						// if the type of the service has changed, another service takes its old place
+						for (Map.Entry<String, TransformationService> entry : services.entrySet()) {
+							if (entry.getValue() == delegate && !entry.getKey().equals(type)
+									&& services.remove(entry.getKey(), delegate)) {
+								TransformationService replacement = findTrackedService(entry.getKey(), reference);
+								if (replacement != null) {
+									services.putIfAbsent(entry.getKey(), replacement);
+								}
+							}
+						}
+						if (type != null) {
+							services.putIfAbsent(type, delegate);
+						}
+					}
+
+					@Override
+					public void removedService(ServiceReference<org.eclipse.smarthome.core.transform.TransformationService> reference,
+							TransformationService delegate) {
+						String type = getType(reference);
+						if (type != null && services.remove(type, delegate)) {
+							// fall back to another service of the same type, if there is one
+							TransformationService replacement = findTrackedService(type, reference);
+							if (replacement != null) {
+								services.put(type, replacement);
+							}
+						}
+						context.ungetService(reference);
+					}
+				});
+		tracker.open();
+	}
+
+	/**
+	 * Stops tracking the transformation services.
+	 */
+	static public synchronized void close() {
+		if (tracker != null) {
+			tracker.close();
+			tracker = null;
+		}
+		services.clear();
+	}
+
 	/**
 	 * Queries the OSGi service registry for a service that provides a transformation service of
-	 * a given transformation type (e.g. REGEX, XSLT, etc.)
+	 * a given transformation type (e.g. REGEX, XSLT, etc.). While the compatibility layer is
+	 * active, the services are tracked and this is a simple lookup.
 	 * 
+	 * @param context the bundle context to query the registry with; it is ignored while the
+	 *            services are tracked, the services are then obtained through the context of
+	 *            the compatibility bundle
 	 * @param transformationType the desired transformation type
 	 * @return a service instance or null, if none could be found
 	 */
 	static public TransformationService getTransformationService(BundleContext context, String transformationType) {
+		if (tracker != null) {
+			TransformationService service = services.get(transformationType);
+			if (service == null) {
+				logger.warn("Cannot get service reference for transformation service of type " + transformationType);
+			}
+			return service;
+		}
 		if(context!=null) {
-			String filter = "(smarthome.transform=" + transformationType + ")";
+			String filter = "(" + TRANSFORM_PROPERTY + "=" + transformationType + ")";
 			try {
 				Collection<ServiceReference<org.eclipse.smarthome.core.transform.TransformationService>> refs = 
 						context.getServiceReferences(org.eclipse.smarthome.core.transform.TransformationService.class, filter);
@@ -46,6 +144,28 @@ public class TransformationHelper {
 		return null;
 	}
 
+	static private String getType(ServiceReference<?> reference) {
+		Object type = reference.getProperty(TRANSFORM_PROPERTY);
+		return type != null ? type.toString() : null;
+	}
+
+	static private TransformationService findTrackedService(String type,
+			ServiceReference<org.eclipse.smarthome.core.transform.TransformationService> excluded) {
+		ServiceTracker<org.eclipse.smarthome.core.transform.TransformationService, TransformationService> currentTracker = tracker;
+		if (currentTracker == null) {
+			return null;
+		}
+		ServiceReference<org.eclipse.smarthome.core.transform.TransformationService>[] references = currentTracker.getServiceReferences();
+		if (references != null) {
+			for (ServiceReference<org.eclipse.smarthome.core.transform.TransformationService> reference : references) {
+				if (!reference.equals(excluded) && type.equals(getType(reference))) {
+					return currentTracker.getService(reference);
+				}
+			}
+		}
+		return null;
+	}
+
 	static private class TransformationServiceDelegate implements TransformationService {
 
 		org.eclipse.smarthome.core.transform.TransformationService delegate;
@@ -13,14 +13,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.MalformedURLException;
-import java.net.Socket;
-import java.net.URL;
-import java.net.URLConnection;
 import java.util.Collection;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
@@ -39,6 +32,9 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.openhab.core.compat1x.internal.CompatibilityActivator;
 import org.openhab.core.library.types.PercentType;
+import org.openhab.io.multimedia.internal.AudioStreamPipeline;
+import org.openhab.io.multimedia.internal.SoundClipCache;
+import org.openhab.io.multimedia.internal.SoundClipCache.DecodedClip;
 import org.openhab.core.scriptengine.action.ActionDoc;
 import org.openhab.core.scriptengine.action.ParamDoc;
 import org.eclipse.smarthome.io.multimedia.tts.TTSService;
@@ -54,19 +50,26 @@ public class Audio {
 	private static final String SOUND_DIR = "sounds";
 	private static final Logger logger = LoggerFactory.getLogger(Audio.class);
 	
-	private static final Pattern plsStreamPattern = Pattern.compile("^File[0-9]=(.+)$");
-
 	private static Float macVolumeValue = null;
 	
-	private static Player streamPlayer = null;
+	private static AudioStreamPipeline streamPipeline = null;
 	
-	private static Socket shoutCastSocket = null;
+	private static final SoundClipCache soundClipCache = SoundClipCache.getInstance();
 
 	@ActionDoc(text="plays a sound from the sounds folder")
 	static public void playSound(
 			@ParamDoc(name="filename", text="the filename with extension") String filename) {
+		File file = new File(RUNTIME_DIR + File.separator + SOUND_DIR + File.separator + filename);
 		try {
-			InputStream is = new FileInputStream(RUNTIME_DIR + File.separator + SOUND_DIR + File.separator + filename);
+			DecodedClip decodedClip = soundClipCache.getClip(file);
+			if (decodedClip != null) {
+				Clip clip = AudioSystem.getClip();
+				clip.open(decodedClip.getFormat(), decodedClip.getData(), 0, decodedClip.getData().length);
+				playInThread(clip);
+				return;
+			}
+			// the sound is too large to be kept in memory, so it is played directly from the file
+			InputStream is = new FileInputStream(file);
 			if (filename.toLowerCase().endsWith(".mp3")) {
 				Player player = new Player(is);
 				playInThread(player);
@@ -92,69 +95,18 @@ public class Audio {
 	@ActionDoc(text="plays an audio stream from an url")
 	static public synchronized void playStream(
 			@ParamDoc(name="url", text="the url of the audio stream") String url) {
-		if (streamPlayer != null) {
+		if (streamPipeline != null) {
 			// if we are already playing a stream, stop it first
-			streamPlayer.close();
-			streamPlayer = null;
+			streamPipeline.stop();
+			streamPipeline = null;
 		}
 		if (url == null) {
 			// the call was only for stopping the currently playing stream
 			return;
 		}
-		try {
-			if(url.toLowerCase().endsWith(".m3u")) {
-				InputStream is = new URL(url).openStream();
-				String urls = IOUtils.toString(is);
-				for(String line : urls.split("\n")) {
-					if(!line.isEmpty() && !line.startsWith("#")) {
-						url = line;
-						break;
-					}
-				}
-			}
-			else if (url.toLowerCase().endsWith(".pls")) {
-				InputStream is = new URL(url).openStream();
-				String urls = IOUtils.toString(is);
-				for(String line : urls.split("\n")) {
-					if(!line.isEmpty() && line.startsWith("File")) {
-						Matcher matcher = plsStreamPattern.matcher(line);
-						if (matcher.find()) {
-							url=matcher.group(1);
-							break;
-						}
-					}
-				}
-			}
-			URL streamUrl = new URL(url);
-			URLConnection connection = streamUrl.openConnection();
-			InputStream is = null;
-			if (connection.getContentType().equals("unknown/unknown")) {
-				//Java does not parse non-standard headers used by SHOUTCast
-				int port = streamUrl.getPort()>0 ? streamUrl.getPort() : 80;
-				// Manipulate User-Agent to receive a stream
-				shoutCastSocket = new Socket(streamUrl.getHost(), port);
-				
-				OutputStream os = shoutCastSocket.getOutputStream();
-				String user_agent = "WinampMPEG/5.09";
-				String req = "GET / HTTP/1.0\r\nuser-agent: " + user_agent + "\r\nIcy-MetaData: 1\r\nConnection: keep-alive\r\n\r\n";
-				os.write(req.getBytes());
-				is = shoutCastSocket.getInputStream();
-			}
-			else {
-				is = streamUrl.openStream();
-			}
-			if (is!=null) {
-				Player player = new Player(is);
-				streamPlayer = player;
-				playInThread(player);
-			}
-		} catch (JavaLayerException e) {
-			logger.error("Cannot play stream '{}': JavaLayerException - {}", url, e.getMessage());
-		} catch (MalformedURLException e) {
-			logger.error("Cannot play stream '{}': MalformedURLException - {}", url, e.getMessage());
-		} catch (IOException e) {
-			logger.error("Cannot play stream '{}': {}", url, e);
-		}
+		// connecting, buffering and decoding happen in the background
+		streamPipeline = new AudioStreamPipeline(url);
+		streamPipeline.start();
 	}
 
 	/**
@@ -366,13 +318,6 @@ public class Audio {
 					player.play();
 				} catch (Exception e) {
 					throw new RuntimeException(e.getMessage());
-				} finally {
-					if (shoutCastSocket!=null) {
-						try {
-							shoutCastSocket.close();
-						} catch (IOException e) {
-						}
-					}
 				}
 			}
 		}.start();
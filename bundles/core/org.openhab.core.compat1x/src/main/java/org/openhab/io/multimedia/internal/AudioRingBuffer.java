@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.multimedia.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * A bounded byte ring buffer which decouples a producer (reading from the
+ * network) from a consumer (decoding the audio). The producer blocks while the
+ * buffer is full, the consumer blocks while it is empty. Reading starts only
+ * after <code>prebufferSize</code> bytes are available, and after an underrun
+ * the buffer is filled up to that level again before reading continues.
+ *
+ * @since 2.0.0
+ */
+public class AudioRingBuffer {
+
+	private final byte[] buffer;
+	private final int prebufferSize;
+
+	private int readPos = 0;
+	private int writePos = 0;
+	private int size = 0;
+
+	private boolean prebuffered = false;
+	private boolean finished = false;
+	private boolean closed = false;
+
+	private long bytesWritten = 0;
+	private long bytesRead = 0;
+	private long underruns = 0;
+
+	/**
+	 * @param capacity the size of the buffer in bytes
+	 * @param prebufferSize the number of bytes which have to be available
+	 *            before reading starts
+	 */
+	public AudioRingBuffer(int capacity, int prebufferSize) {
+		this.buffer = new byte[capacity];
+		this.prebufferSize = Math.min(prebufferSize, capacity);
+	}
+
+	/**
+	 * Writes <code>len</code> bytes into the buffer, blocking while it is full.
+	 *
+	 * @throws IOException if the buffer has been closed
+	 */
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0) {
+			while (size == buffer.length && !closed) {
+				waitForChange();
+			}
+			if (closed) {
+				throw new IOException("audio buffer has been closed");
+			}
+			int count = Math.min(len, Math.min(buffer.length - size, buffer.length - writePos));
+			System.arraycopy(b, off, buffer, writePos, count);
+			writePos = (writePos + count) % buffer.length;
+			size += count;
+			off += count;
+			len -= count;
+			bytesWritten += count;
+			if (size >= prebufferSize) {
+				prebuffered = true;
+			}
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Reads up to <code>len</code> bytes from the buffer, blocking until data
+	 * is available.
+	 *
+	 * @return the number of bytes read or <code>-1</code> if the producer has
+	 *         finished and all data has been read or the buffer has been closed
+	 */
+	public synchronized int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0) {
+			return 0;
+		}
+		while (!closed && !finished && (!prebuffered || size == 0)) {
+			if (prebuffered && size == 0) {
+				// the consumer caught up with the producer
+				underruns++;
+				prebuffered = false;
+			}
+			waitForChange();
+		}
+		if (closed || size == 0) {
+			return -1;
+		}
+		int count = Math.min(len, Math.min(size, buffer.length - readPos));
+		System.arraycopy(buffer, readPos, b, off, count);
+		readPos = (readPos + count) % buffer.length;
+		size -= count;
+		bytesRead += count;
+		notifyAll();
+		return count;
+	}
+
+	/**
+	 * Signals that the producer will not write any further data.
+	 */
+	public synchronized void finish() {
+		finished = true;
+		notifyAll();
+	}
+
+	/**
+	 * Closes the buffer; blocked producers and consumers return immediately.
+	 */
+	public synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	public synchronized int available() {
+		return size;
+	}
+
+	public synchronized long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	public synchronized long getBytesRead() {
+		return bytesRead;
+	}
+
+	public synchronized long getUnderruns() {
+		return underruns;
+	}
+
+	/**
+	 * @return an {@link InputStream} which reads from this buffer
+	 */
+	public InputStream getInputStream() {
+		return new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				int count = AudioRingBuffer.this.read(b, 0, 1);
+				return count == -1 ? -1 : b[0] & 0xff;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return AudioRingBuffer.this.read(b, off, len);
+			}
+
+			@Override
+			public int available() {
+				return AudioRingBuffer.this.available();
+			}
+
+			@Override
+			public void close() {
+				AudioRingBuffer.this.close();
+			}
+		};
+	}
+
+	private void waitForChange() throws InterruptedIOException {
+		try {
+			wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+}
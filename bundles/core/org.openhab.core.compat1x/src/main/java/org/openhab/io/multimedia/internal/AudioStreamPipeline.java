@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.multimedia.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.player.Player;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Plays an MP3 audio stream from an url. A dedicated prefetch thread resolves
+ * playlists, opens the connection and reads the stream into an
+ * {@link AudioRingBuffer}, from which a second thread decodes and plays the
+ * audio. Short network hiccups are therefore absorbed by the buffer instead of
+ * stalling the decoder, and neither {@link #start()} nor {@link #stop()} block
+ * the calling thread.
+ *
+ * @since 2.0.0
+ */
+public class AudioStreamPipeline {
+
+	private static final Logger logger = LoggerFactory.getLogger(AudioStreamPipeline.class);
+
+	private static final Pattern plsStreamPattern = Pattern.compile("^File[0-9]=(.+)$");
+
+	/** the size of the buffer between network and decoder (about 16 seconds of a 128kbit/s stream) */
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	/** the number of bytes which are buffered before playback starts */
+	private static final int PREBUFFER_SIZE = 32 * 1024;
+
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	private static final AtomicLong totalBytesPrefetched = new AtomicLong();
+	private static final AtomicLong totalUnderruns = new AtomicLong();
+
+	private final String url;
+
+	private final AudioRingBuffer ringBuffer = new AudioRingBuffer(BUFFER_SIZE, PREBUFFER_SIZE);
+
+	private volatile boolean stopped = false;
+
+	private volatile InputStream source;
+
+	private volatile Socket shoutCastSocket;
+
+	private volatile Player player;
+
+	private volatile long startTime;
+
+	private volatile long endTime;
+
+	public AudioStreamPipeline(String url) {
+		this.url = url;
+	}
+
+	/**
+	 * Starts the prefetch and the playback thread and returns immediately.
+	 */
+	public void start() {
+		startTime = System.currentTimeMillis();
+
+		Thread prefetchThread = new Thread("Audio stream prefetch") {
+			@Override
+			public void run() {
+				prefetch();
+			}
+		};
+		prefetchThread.setDaemon(true);
+		prefetchThread.start();
+
+		Thread playbackThread = new Thread("Audio stream playback") {
+			@Override
+			public void run() {
+				play();
+			}
+		};
+		playbackThread.setDaemon(true);
+		playbackThread.start();
+	}
+
+	/**
+	 * Stops the playback and releases the network connection. This method
+	 * does not wait for the threads to terminate.
+	 */
+	public void stop() {
+		stopped = true;
+		ringBuffer.close();
+		Player currentPlayer = player;
+		if (currentPlayer != null) {
+			currentPlayer.close();
+		}
+		closeSource();
+	}
+
+	private void prefetch() {
+		try {
+			InputStream is = openStream(resolvePlaylist(url));
+			source = is;
+			if (stopped) {
+				return;
+			}
+			byte[] chunk = new byte[CHUNK_SIZE];
+			int count;
+			while (!stopped && (count = is.read(chunk)) != -1) {
+				ringBuffer.write(chunk, 0, count);
+				totalBytesPrefetched.addAndGet(count);
+			}
+		} catch (IOException e) {
+			if (!stopped) {
+				logger.error("Cannot play stream '{}': {}", url, e);
+			}
+		} finally {
+			ringBuffer.finish();
+			closeSource();
+		}
+	}
+
+	private void play() {
+		try {
+			Player newPlayer = new Player(ringBuffer.getInputStream());
+			player = newPlayer;
+			if (!stopped) {
+				newPlayer.play();
+			}
+		} catch (JavaLayerException e) {
+			if (!stopped) {
+				logger.error("Cannot play stream '{}': JavaLayerException - {}", url, e.getMessage());
+			}
+		} finally {
+			stop();
+			endTime = System.currentTimeMillis();
+			totalUnderruns.addAndGet(ringBuffer.getUnderruns());
+			logger.debug("Stream '{}' finished: {} bytes prefetched, {} bytes/s, {} underruns", url,
+					ringBuffer.getBytesWritten(), getThroughput(), ringBuffer.getUnderruns());
+		}
+	}
+
+	/**
+	 * Resolves m3u and pls playlists to the url of the first stream they contain.
+	 */
+	private String resolvePlaylist(String url) throws IOException {
+		if (url.toLowerCase().endsWith(".m3u")) {
+			InputStream is = new URL(url).openStream();
+			try {
+				String urls = IOUtils.toString(is);
+				for (String line : urls.split("\n")) {
+					if (!line.isEmpty() && !line.startsWith("#")) {
+						return line;
+					}
+				}
+			} finally {
+				IOUtils.closeQuietly(is);
+			}
+		} else if (url.toLowerCase().endsWith(".pls")) {
+			InputStream is = new URL(url).openStream();
+			try {
+				String urls = IOUtils.toString(is);
+				for (String line : urls.split("\n")) {
+					if (!line.isEmpty() && line.startsWith("File")) {
+						Matcher matcher = plsStreamPattern.matcher(line);
+						if (matcher.find()) {
+							return matcher.group(1);
+						}
+					}
+				}
+			} finally {
+				IOUtils.closeQuietly(is);
+			}
+		}
+		return url;
+	}
+
+	private InputStream openStream(String url) throws IOException {
+		URL streamUrl = new URL(url);
+		URLConnection connection = streamUrl.openConnection();
+		if ("unknown/unknown".equals(connection.getContentType())) {
+			// Java does not parse non-standard headers used by SHOUTCast
+			int port = streamUrl.getPort() > 0 ? streamUrl.getPort() : 80;
+			// Manipulate User-Agent to receive a stream
+			shoutCastSocket = new Socket(streamUrl.getHost(), port);
+
+			OutputStream os = shoutCastSocket.getOutputStream();
+			String user_agent = "WinampMPEG/5.09";
+			String req = "GET / HTTP/1.0\r\nuser-agent: " + user_agent
+					+ "\r\nIcy-MetaData: 1\r\nConnection: keep-alive\r\n\r\n";
+			os.write(req.getBytes());
+			return shoutCastSocket.getInputStream();
+		} else {
+			return connection.getInputStream();
+		}
+	}
+
+	private void closeSource() {
+		IOUtils.closeQuietly(source);
+		Socket socket = shoutCastSocket;
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * @return the number of bytes read from the network so far
+	 */
+	public long getBytesPrefetched() {
+		return ringBuffer.getBytesWritten();
+	}
+
+	/**
+	 * @return the number of times the decoder had to wait for the network
+	 */
+	public long getUnderruns() {
+		return ringBuffer.getUnderruns();
+	}
+
+	/**
+	 * @return the average number of bytes per second read from the network
+	 */
+	public long getThroughput() {
+		long end = endTime > 0 ? endTime : System.currentTimeMillis();
+		long duration = end - startTime;
+		return duration > 0 ? ringBuffer.getBytesWritten() * 1000 / duration : 0;
+	}
+
+	/**
+	 * @return the number of bytes read from the network by all streams
+	 */
+	public static long getTotalBytesPrefetched() {
+		return totalBytesPrefetched.get();
+	}
+
+	/**
+	 * @return the number of underruns of all finished streams
+	 */
+	public static long getTotalUnderruns() {
+		return totalUnderruns.get();
+	}
+
+}
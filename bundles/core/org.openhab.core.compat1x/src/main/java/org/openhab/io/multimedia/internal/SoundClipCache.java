@@ -0,0 +1,282 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.multimedia.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps decoded PCM data of short sound files in memory, so that playing the
+ * same sound again neither touches the disk nor decodes the file again. Files
+ * which decode to more than {@link #MAX_CLIP_SIZE} bytes are not cached. The
+ * least recently used clips are evicted once the cache exceeds
+ * {@link #MAX_TOTAL_SIZE} bytes. Cached clips are invalidated when the file
+ * changes. Files which could not be cached are remembered as well, so that
+ * they are not decoded again on every call. The hit and miss counters are
+ * logged at debug level every {@link #LOG_INTERVAL} lookups.
+ *
+ * @since 2.0.0
+ */
+public class SoundClipCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(SoundClipCache.class);
+
+	/** the number of lookups after which the statistics are logged */
+	private static final int LOG_INTERVAL = 100;
+
+	private static final SoundClipCache instance = new SoundClipCache();
+
+	/** the maximum size of a single decoded clip */
+	private static final int MAX_CLIP_SIZE = 2 * 1024 * 1024;
+
+	/** the maximum size of all decoded clips together */
+	private static final long MAX_TOTAL_SIZE = 16 * 1024 * 1024;
+
+	/** the maximum number of files which are remembered as not cacheable */
+	private static final int MAX_UNCACHEABLE = 256;
+
+	private final LinkedHashMap<String, DecodedClip> clips = new LinkedHashMap<String, DecodedClip>(16, 0.75f, true);
+
+	/** lastModified and length of the files which are too large, by path */
+	private final LinkedHashMap<String, long[]> uncacheable = new LinkedHashMap<String, long[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+			return size() > MAX_UNCACHEABLE;
+		}
+	};
+
+	private long totalSize = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * @return the cache shared by all sound actions
+	 */
+	public static SoundClipCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the decoded clip of the given <code>file</code>, decoding and
+	 * caching it if necessary.
+	 *
+	 * @param file the wav or mp3 file
+	 * @return the decoded clip or <code>null</code> if the file is too large to
+	 *         be cached
+	 */
+	public DecodedClip getClip(File file) throws IOException, UnsupportedAudioFileException, JavaLayerException {
+		String key = file.getAbsolutePath();
+		synchronized (this) {
+			DecodedClip clip = clips.get(key);
+			if (clip != null && clip.lastModified == file.lastModified() && clip.fileLength == file.length()) {
+				hits++;
+				logStatistics();
+				return clip;
+			}
+			long[] tooLarge = uncacheable.get(key);
+			if (tooLarge != null && tooLarge[0] == file.lastModified() && tooLarge[1] == file.length()) {
+				hits++;
+				logStatistics();
+				return null;
+			}
+			misses++;
+			logStatistics();
+		}
+
+		long lastModified = file.lastModified();
+		long fileLength = file.length();
+		DecodedClip clip = decode(file);
+		if (clip != null) {
+			put(key, clip);
+		} else {
+			synchronized (this) {
+				uncacheable.put(key, new long[] { lastModified, fileLength });
+			}
+		}
+		return clip;
+	}
+
+	private synchronized void put(String key, DecodedClip clip) {
+		uncacheable.remove(key);
+		DecodedClip previous = clips.put(key, clip);
+		if (previous != null) {
+			totalSize -= previous.data.length;
+		}
+		totalSize += clip.data.length;
+
+		Iterator<Map.Entry<String, DecodedClip>> it = clips.entrySet().iterator();
+		while (totalSize > MAX_TOTAL_SIZE && it.hasNext()) {
+			totalSize -= it.next().getValue().data.length;
+			it.remove();
+		}
+	}
+
+	/*
+	 * Logs the statistics every LOG_INTERVAL lookups, must be called while holding the lock
+	 */
+	private void logStatistics() {
+		if ((hits + misses) % LOG_INTERVAL == 0) {
+			logger.debug("Sound clip cache: {}", this);
+		}
+	}
+
+	/**
+	 * @return the number of lookups which did not need to decode the file
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups which decoded the file
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int getClipCount() {
+		return clips.size();
+	}
+
+	/**
+	 * @return the number of bytes of all cached clips
+	 */
+	public synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "hits=" + hits + ", misses=" + misses + ", clips=" + clips.size() + ", size=" + totalSize
+				+ " bytes, uncacheable=" + uncacheable.size();
+	}
+
+	private static DecodedClip decode(File file) throws IOException, UnsupportedAudioFileException,
+			JavaLayerException {
+		long lastModified = file.lastModified();
+		long fileLength = file.length();
+		if (file.getName().toLowerCase().endsWith(".mp3")) {
+			InputStream is = new FileInputStream(file);
+			try {
+				return decodeMp3(is, MAX_CLIP_SIZE, lastModified, fileLength);
+			} finally {
+				is.close();
+			}
+		}
+
+		AudioInputStream ais = AudioSystem.getAudioInputStream(file);
+		try {
+			long size = ais.getFrameLength() * ais.getFormat().getFrameSize();
+			if (ais.getFrameLength() == AudioSystem.NOT_SPECIFIED || size > MAX_CLIP_SIZE) {
+				return null;
+			}
+			return new DecodedClip(ais.getFormat(), IOUtils.toByteArray(ais), lastModified, fileLength);
+		} finally {
+			ais.close();
+		}
+	}
+
+	/**
+	 * Decodes mp3 data to PCM, so that it can be played through a {@link javax.sound.sampled.Clip}
+	 * on any mixer.
+	 *
+	 * @param is the mp3 data, which is closed when it has been decoded
+	 * @param maxSize the maximum number of bytes of decoded data
+	 * @return the decoded clip or <code>null</code> if the data decodes to more
+	 *         than <code>maxSize</code> bytes or is empty
+	 */
+	public static DecodedClip decodeMp3(InputStream is, int maxSize) throws IOException, JavaLayerException {
+		return decodeMp3(is, maxSize, 0, 0);
+	}
+
+	private static DecodedClip decodeMp3(InputStream is, int maxSize, long lastModified, long fileLength)
+			throws IOException, JavaLayerException {
+		Bitstream bitstream = new Bitstream(new BufferedInputStream(is));
+		try {
+			Decoder decoder = new Decoder();
+			ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+			Header header;
+			while ((header = bitstream.readFrame()) != null) {
+				SampleBuffer output = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+				short[] samples = output.getBuffer();
+				int length = output.getBufferLength();
+				if (pcm.size() + length * 2 > maxSize) {
+					return null;
+				}
+				for (int i = 0; i < length; i++) {
+					// 16 bit signed little endian
+					pcm.write(samples[i] & 0xff);
+					pcm.write((samples[i] >> 8) & 0xff);
+				}
+				bitstream.closeFrame();
+			}
+			if (pcm.size() == 0) {
+				return null;
+			}
+			AudioFormat format = new AudioFormat(decoder.getOutputFrequency(), 16, decoder.getOutputChannels(), true,
+					false);
+			return new DecodedClip(format, pcm.toByteArray(), lastModified, fileLength);
+		} finally {
+			bitstream.close();
+		}
+	}
+
+	/**
+	 * The decoded PCM data of a sound file.
+	 */
+	public static class DecodedClip {
+
+		private final AudioFormat format;
+		private final byte[] data;
+		private final long lastModified;
+		private final long fileLength;
+
+		DecodedClip(AudioFormat format, byte[] data, long lastModified, long fileLength) {
+			this.format = format;
+			this.data = data;
+			this.lastModified = lastModified;
+			this.fileLength = fileLength;
+		}
+
+		public AudioFormat getFormat() {
+			return format;
+		}
+
+		public byte[] getData() {
+			return data;
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.multimedia.tts;
+
+/**
+ * A text-to-speech service which can return the synthesised audio instead of
+ * playing it itself. The runtime caches the audio of such services, so that
+ * repeated announcements are played without synthesising them again.
+ * 
+ * @since 2.0.0
+ */
+public interface SynthesizingTTSService extends TTSService {
+
+	/**
+	 * Synthesises the text with a given voice.
+	 * 
+	 * @param text
+	 *            the text to speak
+	 * @param voice
+	 *            the name of the voice to use or null, if the default voice
+	 *            should be used
+	 * @return the complete audio data in the format denoted by
+	 *         {@link #getAudioFileExtension()} or null, if the text could not
+	 *         be synthesised
+	 */
+	byte[] synthesize(String text, String voice);
+
+	/**
+	 * @return the file extension of the audio returned by
+	 *         {@link #synthesize(String, String)}, either <code>wav</code> or
+	 *         <code>mp3</code>
+	 */
+	String getAudioFileExtension();
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.multimedia.tts.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content-addressed cache for synthesised speech. Entries are keyed by a
+ * hash of service, voice and text and stored as files in a cache folder,
+ * whose total size is limited by evicting the least recently used files. The
+ * most recently used entries are additionally kept in memory.
+ * 
+ * @since 2.0.0
+ */
+public class TTSCache {
+
+	private static final Logger logger = LoggerFactory.getLogger(TTSCache.class);
+
+	/** the maximum size of all files in the cache folder */
+	private static final long MAX_DISK_SIZE = 64 * 1024 * 1024;
+
+	/** the maximum size of all entries kept in memory */
+	private static final long MAX_MEMORY_SIZE = 4 * 1024 * 1024;
+
+	private final File cacheFolder;
+
+	private final LinkedHashMap<String, byte[]> hotEntries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	private long hotSize = 0;
+
+	public TTSCache(File cacheFolder) {
+		this.cacheFolder = cacheFolder;
+	}
+
+	/**
+	 * Creates the key for the given text, voice and service.
+	 */
+	public static String createKey(String serviceName, String voice, String text) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			byte[] hash = digest.digest((serviceName + "\n" + voice + "\n" + text).getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for (byte b : hash) {
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return the cached audio or <code>null</code> if there is none
+	 */
+	public synchronized byte[] get(String key, String extension) {
+		byte[] audio = hotEntries.get(key);
+		if (audio != null) {
+			return audio;
+		}
+
+		File file = getFile(key, extension);
+		if (file.isFile()) {
+			try {
+				audio = FileUtils.readFileToByteArray(file);
+				// the modification time serves as the access time for the LRU eviction
+				file.setLastModified(System.currentTimeMillis());
+				putHot(key, audio);
+				return audio;
+			} catch (IOException e) {
+				logger.warn("Cannot read cached speech '{}': {}", file, e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	public synchronized void put(String key, String extension, byte[] audio) {
+		putHot(key, audio);
+		File file = getFile(key, extension);
+		try {
+			FileUtils.writeByteArrayToFile(file, audio);
+			evictFiles();
+		} catch (IOException e) {
+			logger.warn("Cannot write cached speech '{}': {}", file, e.getMessage());
+		}
+	}
+
+	private void putHot(String key, byte[] audio) {
+		if (audio.length > MAX_MEMORY_SIZE) {
+			return;
+		}
+		byte[] previous = hotEntries.put(key, audio);
+		if (previous != null) {
+			hotSize -= previous.length;
+		}
+		hotSize += audio.length;
+		Iterator<Map.Entry<String, byte[]>> it = hotEntries.entrySet().iterator();
+		while (hotSize > MAX_MEMORY_SIZE && it.hasNext()) {
+			hotSize -= it.next().getValue().length;
+			it.remove();
+		}
+	}
+
+	private void evictFiles() {
+		File[] files = cacheFolder.listFiles();
+		if (files == null) {
+			return;
+		}
+		long diskSize = 0;
+		for (File file : files) {
+			diskSize += file.length();
+		}
+		if (diskSize <= MAX_DISK_SIZE) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		for (File file : files) {
+			if (diskSize <= MAX_DISK_SIZE) {
+				break;
+			}
+			long length = file.length();
+			if (file.delete()) {
+				diskSize -= length;
+			}
+		}
+	}
+
+	private File getFile(String key, String extension) {
+		return new File(cacheFolder, key + "." + extension);
+	}
+
+}
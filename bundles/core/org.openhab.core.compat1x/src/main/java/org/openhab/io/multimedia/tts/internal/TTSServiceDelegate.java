@@ -8,26 +8,127 @@
  */
 package org.openhab.io.multimedia.tts.internal;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Clip;
+import javax.sound.sampled.LineEvent;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import javazoom.jl.decoder.JavaLayerException;
+
 import org.eclipse.smarthome.io.multimedia.tts.TTSService;
+import org.openhab.io.multimedia.internal.SoundClipCache;
+import org.openhab.io.multimedia.internal.SoundClipCache.DecodedClip;
+import org.openhab.io.multimedia.tts.SynthesizingTTSService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class serves as a mapping from the "old" org.openhab namespace to the
  * new org.eclipse.smarthome namespace for the action service. It wraps an
  * instance with the old interface into a class with the new interface.
  * 
+ * If the wrapped service is a {@link SynthesizingTTSService}, the synthesised
+ * audio is kept in a {@link TTSCache} and played from there, so that repeated
+ * phrases are not synthesised again.
+ * 
  * @author Tobias Bräutigam - Initial contribution and API
  */
 public class TTSServiceDelegate implements TTSService {
 
+	private static final Logger logger = LoggerFactory.getLogger(TTSServiceDelegate.class);
+
+	/** the maximum size of decoded mp3 speech, about three minutes of 44.1kHz stereo */
+	private static final int MAX_SPEECH_SIZE = 32 * 1024 * 1024;
+
 	private org.openhab.io.multimedia.tts.TTSService service;
 
+	private TTSCache cache;
+
 	public TTSServiceDelegate(org.openhab.io.multimedia.tts.TTSService service) {
+		this(service, null);
+	}
+
+	public TTSServiceDelegate(org.openhab.io.multimedia.tts.TTSService service, TTSCache cache) {
 		this.service = service;
+		this.cache = cache;
 	}
 
 	@Override
 	public void say(String text, String voice, String outputDevice) {
-		service.say(text, voice, outputDevice);
+		if (cache == null || !(service instanceof SynthesizingTTSService)) {
+			service.say(text, voice, outputDevice);
+			return;
+		}
+
+		SynthesizingTTSService synthesizer = (SynthesizingTTSService) service;
+		String extension = synthesizer.getAudioFileExtension();
+		String key = TTSCache.createKey(service.getClass().getName(), voice, text);
+		byte[] audio = cache.get(key, extension);
+		if (audio == null) {
+			audio = synthesizer.synthesize(text, voice);
+			if (audio == null) {
+				logger.warn("TTS service '{}' could not synthesise '{}'", service.getClass().getName(), text);
+				return;
+			}
+			cache.put(key, extension, audio);
+		} else {
+			logger.debug("Playing cached speech for '{}'", text);
+		}
+		play(audio, extension, outputDevice);
+	}
+
+	/*
+	 * Plays the audio through a Clip on the given device, mp3 is decoded to PCM first the same
+	 * way the sound clips of the Audio action are, so no playback thread is needed
+	 */
+	private void play(byte[] audio, String extension, String outputDevice) {
+		try {
+			final Clip clip = AudioSystem.getClip(getMixerInfo(outputDevice));
+			clip.addLineListener(new LineListener() {
+				@Override
+				public void update(LineEvent event) {
+					if (event.getType() == LineEvent.Type.STOP) {
+						clip.close();
+					}
+				}
+			});
+			if ("mp3".equalsIgnoreCase(extension)) {
+				DecodedClip decodedClip = SoundClipCache.decodeMp3(new ByteArrayInputStream(audio), MAX_SPEECH_SIZE);
+				if (decodedClip == null) {
+					logger.error("Cannot play speech: it is empty or longer than {} bytes of PCM data",
+							MAX_SPEECH_SIZE);
+					return;
+				}
+				clip.open(decodedClip.getFormat(), decodedClip.getData(), 0, decodedClip.getData().length);
+			} else {
+				clip.open(AudioSystem.getAudioInputStream(new ByteArrayInputStream(audio)));
+			}
+			clip.start();
+		} catch (JavaLayerException | UnsupportedAudioFileException | IOException | LineUnavailableException e) {
+			logger.error("Cannot play speech: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * @return the info of the mixer with the given name or <code>null</code>
+	 *         for the default mixer
+	 */
+	private Mixer.Info getMixerInfo(String outputDevice) {
+		if (outputDevice != null) {
+			for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+				if (info.getName().equals(outputDevice)) {
+					return info;
+				}
+			}
+			logger.warn("Audio device '{}' not found - using the default device", outputDevice);
+		}
+		return null;
 	}
 
 }
@@ -8,6 +8,7 @@
  */
 package org.openhab.io.multimedia.tts.internal;
 
+import java.io.File;
 import java.net.URL;
 import java.util.Collection;
 import java.util.Dictionary;
@@ -18,6 +19,7 @@ import java.util.Hashtable;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.smarthome.config.core.ConfigConstants;
 import org.openhab.core.compat1x.internal.CompatibilityActivator;
 import org.openhab.io.multimedia.tts.TTSService;
 import org.osgi.framework.BundleContext;
@@ -44,8 +46,11 @@ public class TTSServiceFactory {
 
 	private Map<TTSService,Map> ttsServices = new HashMap<>();
 
+	private TTSCache cache;
+
 	public void activate(BundleContext context) {
 		this.context = context;
+		this.cache = new TTSCache(new File(ConfigConstants.getUserDataFolder() + File.separator + "tts"));
 		for (TTSService service : ttsServices.keySet()) {
 			registerDelegateService(service,ttsServices.get(service));
 		}
@@ -76,7 +81,7 @@ public class TTSServiceFactory {
 
 	private void registerDelegateService(TTSService ttsService, Map properties) {
 		if (!delegates.containsKey(ttsService.getClass().getName())) {
-			TTSServiceDelegate service = new TTSServiceDelegate(ttsService);
+			TTSServiceDelegate service = new TTSServiceDelegate(ttsService, cache);
 			Dictionary<String, Object> props = new Hashtable<String, Object>();
 			if (properties != null && properties.containsKey("os"))
 				props.put("os", properties.get("os"));
@@ -74,4 +74,27 @@ public class Exec {
 		return ExecUtil.executeCommandLineAndWaitResponse(commandLine, timeout);
 	}
 
+	/**
+	 * <p>
+	 * Executes <code>commandLine</code> and reuses its response for
+	 * <code>cacheTtl</code> milliseconds. This is meant for commands without
+	 * side effects (e.g. reading a sensor) which are called frequently.
+	 * </p>
+	 * 
+	 * @param commandLine
+	 *            the command line to execute
+	 * @param timeout
+	 *            timeout for execution in milliseconds
+	 * @param cacheTtl
+	 *            time in milliseconds the response may be reused
+	 * @return response data from executed command line
+	 */
+	@ActionDoc(text="Executes <code>commandLine</code> and caches its response.")
+	static public String executeCommandLine(
+			@ParamDoc(name="commandLine")String commandLine, 
+			@ParamDoc(name="timeout", text="timeout for execution in milliseconds") int timeout,
+			@ParamDoc(name="cacheTtl", text="time in milliseconds the response may be reused") int cacheTtl) {
+		return ExecUtil.executeCommandLineAndWaitResponse(commandLine, timeout, cacheTtl);
+	}
+
 }
@@ -8,12 +8,15 @@
  */
 package org.openhab.io.net.actions;
 
+import java.util.concurrent.Future;
+
 import org.apache.commons.io.IOUtils;
 import org.openhab.io.net.http.HttpUtil;
 
 /** 
  * This class provides static methods that can be used in automation rules
- * for sending HTTP requests
+ * for sending HTTP requests. The <code>...Async</code> variants return
+ * immediately and provide the response body through a {@link Future}.
  * 
  * @author Kai Kreuzer
  * @since 0.9.0
@@ -91,4 +94,76 @@ public class HTTP {
 		return HttpUtil.executeUrl("DELETE", url, 1000); 
 	}
 
+	/** 
+	* Send out a GET-HTTP request asynchronously. Errors will be logged. 
+	*
+	* @param url the URL to be used for the GET request. 
+	* @return a {@link Future} providing the response body or <code>NULL</code>
+	*  when the request could not be issued
+	*/ 
+	static public Future<String> sendHttpGetRequestAsync(String url) { 
+		return HttpUtil.executeUrlAsync("GET", url, 5000); 
+	} 
+	
+	/** 
+	* Send out a PUT-HTTP request asynchronously. Errors will be logged. 
+	*
+	* @param url the URL to be used for the PUT request. 
+	* @return a {@link Future} providing the response body or <code>NULL</code>
+	*  when the request could not be issued
+	*/ 
+	static public Future<String> sendHttpPutRequestAsync(String url) { 
+		return HttpUtil.executeUrlAsync("PUT", url, 1000); 
+	}
+	
+	/** 
+	* Send out a PUT-HTTP request asynchronously. Errors will be logged. 
+	*
+	* @param url the URL to be used for the PUT request. 
+	* @param contentType the content type of the given <code>content</code>
+	* @param content the content to be send to the given <code>url</code> or
+	*  <code>null</code> if no content should be send.
+	* @return a {@link Future} providing the response body or <code>NULL</code>
+	*  when the request could not be issued
+	*/ 
+	static public Future<String> sendHttpPutRequestAsync(String url, String contentType, String content) { 
+		return HttpUtil.executeUrlAsync("PUT", url, null, IOUtils.toInputStream(content), contentType, 1000, null); 
+	}
+	
+	/** 
+	* Send out a POST-HTTP request asynchronously. Errors will be logged. 
+	*
+	* @param url the URL to be used for the POST request. 
+	* @return a {@link Future} providing the response body or <code>NULL</code>
+	*  when the request could not be issued
+	*/ 
+	static public Future<String> sendHttpPostRequestAsync(String url) { 
+		return HttpUtil.executeUrlAsync("POST", url, 1000); 
+	}
+	
+	/** 
+	* Send out a POST-HTTP request asynchronously. Errors will be logged. 
+	*
+	* @param url the URL to be used for the POST request.
+	* @param contentType the content type of the given <code>content</code>
+	* @param content the content to be send to the given <code>url</code> or
+	*  <code>null</code> if no content should be send.
+	* @return a {@link Future} providing the response body or <code>NULL</code>
+	*  when the request could not be issued
+	*/ 
+	static public Future<String> sendHttpPostRequestAsync(String url, String contentType, String content) { 
+		return HttpUtil.executeUrlAsync("POST", url, null, IOUtils.toInputStream(content), contentType, 1000, null); 
+	}
+	
+	/** 
+	* Send out a DELETE-HTTP request asynchronously. Errors will be logged. 
+	*
+	* @param url the URL to be used for the DELETE request. 
+	* @return a {@link Future} providing the response body or <code>NULL</code>
+	*  when the request could not be issued
+	*/ 
+	static public Future<String> sendHttpDeleteRequestAsync(String url) { 
+		return HttpUtil.executeUrlAsync("DELETE", url, 1000); 
+	}
+
 }
@@ -14,6 +14,26 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 
 /**
@@ -24,6 +44,48 @@ import java.net.SocketTimeoutException;
  */
 public class Ping {
 	
+	private static final Logger logger = LoggerFactory.getLogger(Ping.class);
+	
+	/** the number of threads resolving host names for the batch checks */
+	private static final int RESOLVER_THREADS = 4;
+	
+	/** the maximum number of host names waiting to be resolved, further targets are reported unreachable */
+	private static final int RESOLVER_QUEUE_CAPACITY = 1024;
+	
+	/**
+	 * resolves host names for the batch checks, so that slow lookups do not delay the other targets;
+	 * lookups which do not finish before the timeout of their batch are reported unreachable
+	 */
+	private static final ThreadPoolExecutor resolver = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS,
+			60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(RESOLVER_QUEUE_CAPACITY), new ThreadFactory() {
+				private final AtomicInteger threadNumber = new AtomicInteger(1);
+				
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Ping-resolver-" + threadNumber.getAndIncrement());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	
+	static {
+		resolver.allowCoreThreadTimeOut(true);
+	}
+	
+	/**
+	 * Receives the results of {@link Ping#checkVitality(Collection, int, VitalityCallback)}
+	 * as soon as they are known.
+	 */
+	public interface VitalityCallback {
+		
+		/**
+		 * @param target the target as it has been passed in
+		 * @param reachable <code>true</code> if a connection to the target
+		 * could be established within the timeout
+		 */
+		void onResult(String target, boolean reachable);
+	}
+	
 	/**
 	 * Checks the vitality of <code>host</code>. If <code>port</code> '0'
 	 * is specified (which is the default when configuring just the host), a
@@ -63,4 +125,204 @@ public class Ping {
 	}
 	
 	
+	/**
+	 * Checks the vitality of all given <code>targets</code> at once. Every
+	 * target has the form <code>host:port</code> (IPv6 addresses are written
+	 * as <code>[address]:port</code>). Instead of using one thread per target,
+	 * non-blocking connects are issued for all targets and observed by a
+	 * single {@link Selector} on the calling thread. Host names are resolved
+	 * in the background and count towards the <code>timeout</code>, a target
+	 * whose name could not be resolved in time is reported as unreachable.
+	 * ICMP pings (port '0') are not supported by this method.
+	 * 
+	 * @param targets the <code>host:port</code> targets to check
+	 * @param timeout the time in milliseconds all checks together may take
+	 * 
+	 * @return the results in the order of <code>targets</code>, 
+	 * <code>true</code> for every target which accepted a connection within
+	 * the <code>timeout</code> and <code>false</code> in all other cases
+	 * 
+	 * @throws IOException if the selector could not be opened
+	 */
+	public static Map<String, Boolean> checkVitality(Collection<String> targets, int timeout) throws IOException {
+		final Map<String, Boolean> results = new LinkedHashMap<String, Boolean>();
+		for (String target : targets) {
+			results.put(target, Boolean.FALSE);
+		}
+		checkVitality(targets, timeout, new VitalityCallback() {
+			@Override
+			public void onResult(String target, boolean reachable) {
+				results.put(target, reachable);
+			}
+		});
+		return results;
+	}
+	
+	/**
+	 * Checks the vitality of all given <code>targets</code> at once like
+	 * {@link #checkVitality(Collection, int)}, but reports every result to
+	 * <code>callback</code> as soon as it is known. This method returns once
+	 * a result has been reported for every target.
+	 * 
+	 * @param targets the <code>host:port</code> targets to check
+	 * @param timeout the time in milliseconds all checks together may take
+	 * @param callback the callback which receives the results
+	 * 
+	 * @throws IOException if the selector could not be opened
+	 */
+	public static void checkVitality(Collection<String> targets, int timeout, VitalityCallback callback) throws IOException {
+		long deadline = System.currentTimeMillis() + timeout;
+		final Selector selector = Selector.open();
+		final Queue<Resolution> resolutions = new ConcurrentLinkedQueue<Resolution>();
+		final boolean[] finished = { false };
+		List<String> resolving = new ArrayList<String>();
+		try {
+			for (final String target : targets) {
+				final InetSocketAddress address;
+				try {
+					address = parseTarget(target);
+				} catch (RuntimeException e) {
+					logger.debug("Cannot connect to '{}': {}", target, e.getMessage());
+					callback.onResult(target, false);
+					continue;
+				}
+				if (!address.isUnresolved()) {
+					connect(selector, target, address, callback);
+					continue;
+				}
+				try {
+					resolver.execute(new Runnable() {
+						@Override
+						public void run() {
+							synchronized (finished) {
+								if (finished[0]) {
+									// the batch has timed out while the lookup was waiting
+									return;
+								}
+							}
+							InetSocketAddress resolved = new InetSocketAddress(address.getHostString(), address.getPort());
+							synchronized (finished) {
+								if (!finished[0]) {
+									resolutions.add(new Resolution(target, resolved));
+									selector.wakeup();
+								}
+							}
+						}
+					});
+					resolving.add(target);
+				} catch (RejectedExecutionException e) {
+					logger.debug("Cannot connect to '{}': too many host names waiting to be resolved", target);
+					callback.onResult(target, false);
+				}
+			}
+			
+			long remaining = deadline - System.currentTimeMillis();
+			while ((!resolving.isEmpty() || !selector.keys().isEmpty()) && remaining > 0) {
+				selector.select(remaining);
+				Resolution resolution;
+				while ((resolution = resolutions.poll()) != null) {
+					resolving.remove(resolution.target);
+					if (resolution.address.isUnresolved()) {
+						logger.debug("Cannot connect to '{}': unknown host", resolution.target);
+						callback.onResult(resolution.target, false);
+					} else {
+						connect(selector, resolution.target, resolution.address, callback);
+					}
+				}
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					SocketChannel channel = (SocketChannel) key.channel();
+					boolean reachable = false;
+					try {
+						reachable = channel.finishConnect();
+					} catch (IOException e) {
+						logger.trace("Cannot connect to '{}': {}", key.attachment(), e.getMessage());
+					}
+					key.cancel();
+					closeQuietly(channel);
+					callback.onResult((String) key.attachment(), reachable);
+				}
+				// cancelled keys are only removed by the next selection operation
+				selector.selectNow();
+				remaining = deadline - System.currentTimeMillis();
+			}
+			
+			synchronized (finished) {
+				// lookups which finish later are dropped
+				finished[0] = true;
+			}
+			for (String target : resolving) {
+				logger.debug("Cannot connect to '{}': host name not resolved in time", target);
+				callback.onResult(target, false);
+			}
+			for (SelectionKey key : selector.keys()) {
+				closeQuietly(key.channel());
+				callback.onResult((String) key.attachment(), false);
+			}
+		} finally {
+			synchronized (finished) {
+				finished[0] = true;
+				selector.close();
+			}
+		}
+	}
+	
+	private static void connect(Selector selector, String target, InetSocketAddress address, VitalityCallback callback) {
+		SocketChannel channel = null;
+		try {
+			channel = SocketChannel.open();
+			channel.configureBlocking(false);
+			if (channel.connect(address)) {
+				channel.close();
+				callback.onResult(target, true);
+			} else {
+				channel.register(selector, SelectionKey.OP_CONNECT, target);
+			}
+		} catch (IOException | RuntimeException e) {
+			logger.debug("Cannot connect to '{}': {}", target, e.getMessage());
+			closeQuietly(channel);
+			callback.onResult(target, false);
+		}
+	}
+	
+	private static InetSocketAddress parseTarget(String target) {
+		int portSeparator = target.lastIndexOf(':');
+		if (portSeparator <= 0) {
+			throw new IllegalArgumentException("target must have the form host:port");
+		}
+		String host = target.substring(0, portSeparator);
+		if (host.startsWith("[") && host.endsWith("]")) {
+			host = host.substring(1, host.length() - 1);
+		}
+		int port = Integer.parseInt(target.substring(portSeparator + 1).trim());
+		if (host.contains(":") || host.matches("[0-9.]+")) {
+			// address literals need no lookup
+			return new InetSocketAddress(host, port);
+		}
+		return InetSocketAddress.createUnresolved(host, port);
+	}
+	
+	private static class Resolution {
+		
+		private final String target;
+		private final InetSocketAddress address;
+		
+		Resolution(String target, InetSocketAddress address) {
+			this.target = target;
+			this.address = address;
+		}
+	}
+	
+	private static void closeQuietly(java.nio.channels.Channel channel) {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
 }
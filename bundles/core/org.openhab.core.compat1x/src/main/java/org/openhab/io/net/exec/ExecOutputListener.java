@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.exec;
+
+/**
+ * Receives the output of a command executed through {@link ExecService} line
+ * by line while the command is still running. Implementations are called
+ * from the thread which pumps the respective stream of the process.
+ *
+ * @since 2.0.0
+ */
+public interface ExecOutputListener {
+
+    /**
+     * Called for every line the process writes to its standard output.
+     *
+     * @param line the line without its line terminator
+     */
+    void onStdout(String line);
+
+    /**
+     * Called for every line the process writes to its standard error.
+     *
+     * @param line the line without its line terminator
+     */
+    void onStderr(String line);
+
+}
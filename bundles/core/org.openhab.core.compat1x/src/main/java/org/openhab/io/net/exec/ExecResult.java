@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.exec;
+
+/**
+ * The outcome of a command executed through {@link ExecService}.
+ *
+ * @since 2.0.0
+ */
+public class ExecResult {
+
+    private final int exitCode;
+    private final String output;
+    private final boolean timedOut;
+
+    public ExecResult(int exitCode, String output, boolean timedOut) {
+        this.exitCode = exitCode;
+        this.output = output;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * @return the exit code of the process
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return the standard output and standard error of the process as
+     *         written (possibly truncated) without the trailing line
+     *         terminator
+     */
+    public String getOutput() {
+        return output;
+    }
+
+    /**
+     * @return <code>true</code> if the process has been killed because it
+     *         exceeded its timeout
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecResult [exitCode=" + exitCode + ", timedOut=" + timedOut + ", output=" + output + "]";
+    }
+
+}
@@ -0,0 +1,553 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteWatchdog;
+import org.apache.commons.exec.LogOutputStream;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes command lines on a bounded pool of threads. At most
+ * <code>maxConcurrent</code> processes run at the same time, further commands
+ * are queued up to <code>queueCapacity</code> and rejected beyond that.
+ * Standard output and standard error of every process are always drained so
+ * that processes cannot block on full pipes; they can be consumed line by line
+ * through an {@link ExecOutputListener}.
+ * <p>
+ * Results of idempotent commands can be cached for a given time to live, in
+ * which case concurrent calls of the same command share one execution.
+ * Commands whose result is not needed are launched on a pool of their own,
+ * so they do not occupy one of the <code>maxConcurrent</code> slots. That pool
+ * is bounded the same way by <code>maxLaunched</code> and
+ * <code>launchQueueCapacity</code>, and launched processes are killed after
+ * <code>launchTimeout</code>.
+ *
+ * @since 2.0.0
+ */
+public class ExecService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecService.class);
+
+    /** the maximum number of bytes of output which is kept for a result */
+    private static final int MAX_OUTPUT_LENGTH = 1024 * 1024;
+
+    /** the maximum number of cached results before expired entries are purged */
+    private static final int MAX_CACHE_ENTRIES = 256;
+
+    /** the default time in milliseconds after which a launched process is killed */
+    public static final int DEFAULT_LAUNCH_TIMEOUT = 5 * 60 * 1000;
+
+    private final ThreadPoolExecutor executor;
+
+    private final ThreadPoolExecutor launcher;
+
+    private final int launchTimeout;
+
+    private final ConcurrentMap<String, CachedResult> resultCache = new ConcurrentHashMap<String, CachedResult>();
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong launchedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong totalExecutionTime = new AtomicLong();
+
+    /**
+     * Creates a new execution service which uses the same limits for launched
+     * commands and kills them after {@link #DEFAULT_LAUNCH_TIMEOUT}.
+     *
+     * @param maxConcurrent the maximum number of processes which run at the same time
+     * @param queueCapacity the maximum number of commands which wait for execution
+     */
+    public ExecService(int maxConcurrent, int queueCapacity) {
+        this(maxConcurrent, queueCapacity, maxConcurrent, queueCapacity, DEFAULT_LAUNCH_TIMEOUT);
+    }
+
+    /**
+     * Creates a new execution service.
+     *
+     * @param maxConcurrent the maximum number of processes which run at the same time
+     * @param queueCapacity the maximum number of commands which wait for execution
+     * @param maxLaunched the maximum number of launched processes which run at the same time
+     * @param launchQueueCapacity the maximum number of launched commands which wait for execution
+     * @param launchTimeout the time in milliseconds after which a launched process is killed,
+     *            <code>0</code> for no timeout
+     */
+    public ExecService(int maxConcurrent, int queueCapacity, int maxLaunched, int launchQueueCapacity,
+            int launchTimeout) {
+        executor = createExecutor(maxConcurrent, queueCapacity, "ExecService-");
+        launcher = createExecutor(maxLaunched, launchQueueCapacity, "ExecService-launch-");
+        this.launchTimeout = launchTimeout;
+    }
+
+    private static ThreadPoolExecutor createExecutor(int maxThreads, int queueCapacity, final String namePrefix) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Queues <code>commandLine</code> for execution.
+     *
+     * @param commandLine the command line to execute
+     * @param timeout the time in milliseconds after which the process is
+     *            killed, <code>0</code> for no timeout
+     * @param listener receives the output of the process while it is running,
+     *            may be <code>null</code>
+     * @return a {@link Future} providing the result of the execution or
+     *         <code>null</code> if the command has been rejected because the
+     *         queue is full
+     */
+    public Future<ExecResult> submit(String commandLine, int timeout, ExecOutputListener listener) {
+        return submit(ExecUtil.parseCommandLine(commandLine), timeout, listener, true);
+    }
+
+    /**
+     * Executes <code>commandLine</code> and waits for its result. If
+     * <code>cacheTtl</code> is positive the result is cached and returned for
+     * all calls of the same command line within that time, so it must only be
+     * used for commands without side effects.
+     *
+     * @param commandLine the command line to execute
+     * @param timeout the time in milliseconds after which the process is
+     *            killed, <code>0</code> for no timeout
+     * @param cacheTtl the time in milliseconds a result may be reused,
+     *            <code>0</code> to disable caching
+     * @return the result of the execution or <code>null</code> if the command
+     *         could not be executed
+     */
+    public ExecResult execute(String commandLine, int timeout, long cacheTtl) {
+        Future<ExecResult> future;
+        if (cacheTtl > 0) {
+            future = submitCached(commandLine, timeout, cacheTtl);
+        } else {
+            future = submit(ExecUtil.parseCommandLine(commandLine), timeout, null, true);
+        }
+        if (future == null) {
+            return null;
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while waiting for commandLine '" + commandLine + "'", e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // the cause has already been logged by the executing thread
+            CachedResult cached = resultCache.get(commandLine);
+            if (cached != null && cached.future == future) {
+                resultCache.remove(commandLine, cached);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Queues <code>cmdLine</code> on the pool for launched commands and
+     * returns immediately. The output of the process is drained and
+     * discarded. Launched commands are not counted against
+     * <code>maxConcurrent</code>, so long running commands cannot block the
+     * commands which wait for their result, but they are limited by
+     * <code>maxLaunched</code> and <code>launchTimeout</code>.
+     *
+     * @param cmdLine the command line to execute
+     * @return <code>false</code> if the command has been rejected because the
+     *         queue is full
+     */
+    public boolean launch(final CommandLine cmdLine) {
+        try {
+            launcher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        ExecService.this.run(cmdLine, launchTimeout, null, false);
+                    } catch (IOException e) {
+                        // has already been logged
+                    }
+                }
+            });
+            launchedCount.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            logger.warn("rejected commandLine '{}' as there are already {} launched commands waiting for execution",
+                    cmdLine, launcher.getQueue().size());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the pending or cached execution of <code>commandLine</code> or
+     * submits a new one. Only the caller whose entry made it into the cache
+     * submits the command, so concurrent calls share one execution.
+     */
+    private Future<ExecResult> submitCached(final String commandLine, final int timeout, long cacheTtl) {
+        while (true) {
+            CachedResult cached = resultCache.get(commandLine);
+            if (cached != null && !cached.isExpired()) {
+                cacheHitCount.incrementAndGet();
+                logger.debug("using cached result of commandLine '{}'", commandLine);
+                return cached.future;
+            }
+            if (cached == null) {
+                purgeCache();
+            }
+
+            final CommandLine cmdLine = ExecUtil.parseCommandLine(commandLine);
+            FutureTask<ExecResult> task = new FutureTask<ExecResult>(new Callable<ExecResult>() {
+                @Override
+                public ExecResult call() throws IOException {
+                    return run(cmdLine, timeout, null, true);
+                }
+            });
+            CachedResult entry = new CachedResult(task, System.currentTimeMillis() + cacheTtl);
+            boolean won = cached == null ? resultCache.putIfAbsent(commandLine, entry) == null
+                    : resultCache.replace(commandLine, cached, entry);
+            if (!won) {
+                // another caller was faster, use its execution
+                continue;
+            }
+            if (!schedule(task, cmdLine)) {
+                resultCache.remove(commandLine, entry);
+                return null;
+            }
+            return task;
+        }
+    }
+
+    Future<ExecResult> submit(final CommandLine cmdLine, final int timeout, final ExecOutputListener listener,
+            final boolean collectOutput) {
+        FutureTask<ExecResult> task = new FutureTask<ExecResult>(new Callable<ExecResult>() {
+            @Override
+            public ExecResult call() throws IOException {
+                return run(cmdLine, timeout, listener, collectOutput);
+            }
+        });
+        return schedule(task, cmdLine) ? task : null;
+    }
+
+    private boolean schedule(FutureTask<ExecResult> task, CommandLine cmdLine) {
+        try {
+            executor.execute(task);
+            submittedCount.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejectedCount.incrementAndGet();
+            logger.warn("rejected commandLine '{}' as there are already {} commands waiting for execution",
+                    cmdLine, executor.getQueue().size());
+            return false;
+        }
+    }
+
+    private ExecResult run(CommandLine cmdLine, int timeout, ExecOutputListener listener, boolean collectOutput)
+            throws IOException {
+        long start = System.currentTimeMillis();
+
+        // both streams end up in the output, as they did when it was read through a single PumpStreamHandler stream
+        BoundedOutput output = collectOutput ? new BoundedOutput() : null;
+        OutputCollector stdout = new OutputCollector(listener, false, output);
+        OutputCollector stderr = new OutputCollector(listener, true, output);
+        ExecuteWatchdog watchdog = new ExecuteWatchdog(timeout > 0 ? timeout : ExecuteWatchdog.INFINITE_TIMEOUT);
+
+        DefaultExecutor executor = new DefaultExecutor();
+        executor.setExitValues(null);
+        executor.setStreamHandler(new PumpStreamHandler(stdout, stderr));
+        executor.setWatchdog(watchdog);
+
+        try {
+            logger.debug("executing commandLine '{}'", cmdLine);
+            int exitCode = executor.execute(cmdLine);
+            stdout.close();
+            stderr.close();
+
+            ExecResult result = new ExecResult(exitCode, output != null ? output.getOutput() : null,
+                    watchdog.killedProcess());
+            if (result.isTimedOut()) {
+                timedOutCount.incrementAndGet();
+                logger.warn("Timeout occured when executing commandLine '{}'", cmdLine);
+            } else {
+                completedCount.incrementAndGet();
+                logger.debug("exit code '{}', result '{}'", exitCode, result.getOutput());
+            }
+            return result;
+        } catch (IOException e) {
+            failedCount.incrementAndGet();
+            logger.error("couldn't execute commandLine '" + cmdLine + "'", e);
+            throw e;
+        } finally {
+            totalExecutionTime.addAndGet(System.currentTimeMillis() - start);
+        }
+    }
+
+    private void purgeCache() {
+        if (resultCache.size() >= MAX_CACHE_ENTRIES) {
+            Iterator<CachedResult> it = resultCache.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isExpired()) {
+                    it.remove();
+                }
+            }
+            if (resultCache.size() >= MAX_CACHE_ENTRIES) {
+                resultCache.clear();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting commands and kills the threads of this service once all
+     * running commands have terminated.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        launcher.shutdown();
+        resultCache.clear();
+    }
+
+    /**
+     * @return <code>true</code> if {@link #shutdown()} has been called
+     */
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * @return the number of processes which are running right now
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of commands which wait for execution
+     */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of launched processes which are running right now
+     */
+    public int getActiveLaunchedCount() {
+        return launcher.getActiveCount();
+    }
+
+    /**
+     * @return the number of launched commands which wait for execution
+     */
+    public int getQueuedLaunchedCount() {
+        return launcher.getQueue().size();
+    }
+
+    /**
+     * @return the number of commands which have been accepted for execution
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * @return the number of commands which have been accepted for launching without waiting for their result
+     */
+    public long getLaunchedCount() {
+        return launchedCount.get();
+    }
+
+    /**
+     * @return the number of commands which have terminated within their timeout
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @return the number of commands which could not be started
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return the number of commands which have been killed after their timeout
+     */
+    public long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    /**
+     * @return the number of commands which have been rejected because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return the number of calls which have been answered from the result cache
+     */
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    /**
+     * @return the average execution time in milliseconds of all executed commands
+     */
+    public long getAverageExecutionTime() {
+        long executed = completedCount.get() + timedOutCount.get() + failedCount.get();
+        return executed == 0 ? 0 : totalExecutionTime.get() / executed;
+    }
+
+    /**
+     * Keeps the raw output of a process up to {@link #MAX_OUTPUT_LENGTH}
+     * bytes. Standard output and standard error are written by different
+     * threads, which is fine as {@link ByteArrayOutputStream} is synchronized.
+     */
+    private static class BoundedOutput extends ByteArrayOutputStream {
+
+        @Override
+        public synchronized void write(int b) {
+            if (count < MAX_OUTPUT_LENGTH) {
+                super.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            super.write(b, off, Math.min(len, MAX_OUTPUT_LENGTH - count));
+        }
+
+        String getOutput() {
+            return StringUtils.chomp(toString());
+        }
+    }
+
+    /**
+     * Passes the bytes written by a process to an optional
+     * {@link BoundedOutput} unchanged and splits them into lines for an
+     * optional {@link ExecOutputListener}.
+     */
+    private static class OutputCollector extends OutputStream {
+
+        private final BoundedOutput output;
+        private final LineSplitter lines;
+
+        OutputCollector(ExecOutputListener listener, boolean stderr, BoundedOutput output) {
+            this.output = output;
+            this.lines = listener != null || stderr ? new LineSplitter(listener, stderr) : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (output != null) {
+                output.write(b);
+            }
+            if (lines != null) {
+                lines.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (output != null) {
+                output.write(b, off, len);
+            }
+            if (lines != null) {
+                lines.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (lines != null) {
+                lines.close();
+            }
+        }
+    }
+
+    /**
+     * Forwards the lines written by a process to an {@link ExecOutputListener}
+     * or logs the lines of standard error if there is no listener.
+     */
+    private static class LineSplitter extends LogOutputStream {
+
+        private final ExecOutputListener listener;
+        private final boolean stderr;
+
+        LineSplitter(ExecOutputListener listener, boolean stderr) {
+            this.listener = listener;
+            this.stderr = stderr;
+        }
+
+        @Override
+        protected void processLine(String line, int level) {
+            if (listener != null) {
+                try {
+                    if (stderr) {
+                        listener.onStderr(line);
+                    } else {
+                        listener.onStdout(line);
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("output listener threw an exception", e);
+                }
+            } else {
+                logger.debug("stderr: {}", line);
+            }
+        }
+    }
+
+    private static class CachedResult {
+
+        private final Future<ExecResult> future;
+        private final long expires;
+
+        CachedResult(Future<ExecResult> future, long expires) {
+            this.future = future;
+            this.expires = expires;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expires;
+        }
+    }
+
+}
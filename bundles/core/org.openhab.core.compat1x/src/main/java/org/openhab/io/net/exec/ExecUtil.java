@@ -8,23 +8,18 @@
  */
 package org.openhab.io.net.exec;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.StringTokenizer;
+import java.util.concurrent.Future;
 
 import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecuteResultHandler;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.ExecuteWatchdog;
-import org.apache.commons.exec.Executor;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Some common methods to execute commands on command line.
+ * Some common methods to execute commands on command line. All commands are
+ * executed through a shared {@link ExecService}, which limits the number of
+ * processes running at the same time.
  *
  * @author Pauli Anttila - Initial contribution
  * @author Kai Kreuzer - added exception logging
@@ -35,6 +30,57 @@ public class ExecUtil {
 
     private static final String CMD_LINE_DELIMITER = "@@";
 
+    /**
+     * the maximum number of processes running at the same time, can be changed
+     * through the System variable <code>openhab.exec.maxConcurrent</code>
+     */
+    private static final int MAX_CONCURRENT = Integer.getInteger("openhab.exec.maxConcurrent", 8);
+
+    /**
+     * the maximum number of commands waiting for execution, can be changed
+     * through the System variable <code>openhab.exec.queueCapacity</code>
+     */
+    private static final int QUEUE_CAPACITY = Integer.getInteger("openhab.exec.queueCapacity", 100);
+
+    /**
+     * the maximum number of processes started by {@link #executeCommandLine(String)}
+     * running at the same time, can be changed through the System variable
+     * <code>openhab.exec.maxLaunched</code>
+     */
+    private static final int MAX_LAUNCHED = Integer.getInteger("openhab.exec.maxLaunched", 8);
+
+    /**
+     * the time in milliseconds after which a process started by
+     * {@link #executeCommandLine(String)} is killed, can be changed through the
+     * System variable <code>openhab.exec.launchTimeout</code>
+     */
+    private static final int LAUNCH_TIMEOUT = Integer.getInteger("openhab.exec.launchTimeout",
+            ExecService.DEFAULT_LAUNCH_TIMEOUT);
+
+    private static ExecService execService;
+
+    /**
+     * Returns the shared {@link ExecService}, e.g. to query its metrics.
+     *
+     * @return the shared execution service
+     */
+    public static synchronized ExecService getExecService() {
+        if (execService == null || execService.isShutdown()) {
+            execService = new ExecService(MAX_CONCURRENT, QUEUE_CAPACITY, MAX_LAUNCHED, QUEUE_CAPACITY, LAUNCH_TIMEOUT);
+        }
+        return execService;
+    }
+
+    /**
+     * Shuts the shared {@link ExecService} down. It is recreated on next use.
+     */
+    public static synchronized void shutdownExecService() {
+        if (execService != null) {
+            execService.shutdown();
+            execService = null;
+        }
+    }
+
     /**
      * <p>
      * Executes <code>commandLine</code>. Sometimes (especially observed on
@@ -45,8 +91,11 @@ public class ExecUtil {
      * is used.
      * </p>
      * <p>
-     * A possible {@link IOException} gets logged but no further processing is
-     * done.
+     * The process is queued on the pool for launched commands of the shared
+     * {@link ExecService} and this method returns immediately. The output of
+     * the process is discarded and it is killed after
+     * <code>openhab.exec.launchTimeout</code>. A rejected command or a possible
+     * {@link IOException} gets logged but no further processing is done.
      * </p>
      *
      * @param commandLine
@@ -54,17 +103,25 @@ public class ExecUtil {
      * @see http://www.peterfriese.de/running-applescript-from-java/
      */
     public static void executeCommandLine(String commandLine) {
-        try {
-            if (commandLine.contains(CMD_LINE_DELIMITER)) {
-                String[] cmdArray = commandLine.split(CMD_LINE_DELIMITER);
-                Runtime.getRuntime().exec(cmdArray);
-                logger.info("executed commandLine '{}'", Arrays.asList(cmdArray));
-            } else {
-                Runtime.getRuntime().exec(commandLine);
-                logger.info("executed commandLine '{}'", commandLine);
+        CommandLine cmdLine;
+        if (commandLine.contains(CMD_LINE_DELIMITER)) {
+            cmdLine = createCommandLine(commandLine.split(CMD_LINE_DELIMITER));
+        } else {
+            // split on whitespace only, the same way Runtime.exec(String) does
+            StringTokenizer tokenizer = new StringTokenizer(commandLine);
+            String[] cmdArray = new String[tokenizer.countTokens()];
+            for (int i = 0; tokenizer.hasMoreTokens(); i++) {
+                cmdArray[i] = tokenizer.nextToken();
             }
-        } catch (IOException e) {
-            logger.error("couldn't execute commandLine '" + commandLine + "'", e);
+            if (cmdArray.length == 0) {
+                logger.error("couldn't execute empty commandLine");
+                return;
+            }
+            cmdLine = createCommandLine(cmdArray);
+        }
+
+        if (getExecService().launch(cmdLine)) {
+            logger.info("executed commandLine '{}'", commandLine);
         }
     }
 
@@ -89,58 +146,71 @@ public class ExecUtil {
      * @return response data from executed command line
      */
     public static String executeCommandLineAndWaitResponse(String commandLine, int timeout) {
-        String retval = null;
+        return executeCommandLineAndWaitResponse(commandLine, timeout, 0);
+    }
 
-        CommandLine cmdLine = null;
+    /**
+     * <p>
+     * Executes <code>commandLine</code> like
+     * {@link #executeCommandLineAndWaitResponse(String, int)}, but reuses the
+     * response for <code>cacheTtl</code> milliseconds. Only use this for
+     * commands without side effects, e.g. for reading sensors.
+     * </p>
+     *
+     * @param commandLine
+     *            the command line to execute
+     * @param timeout
+     *            timeout for execution in milliseconds
+     * @param cacheTtl
+     *            time in milliseconds the response may be reused, <code>0</code>
+     *            to always execute the command
+     * @return response data from executed command line
+     */
+    public static String executeCommandLineAndWaitResponse(String commandLine, int timeout, long cacheTtl) {
+        ExecResult result = getExecService().execute(commandLine, timeout, cacheTtl);
+        return result != null ? result.getOutput() : null;
+    }
 
-        if (commandLine.contains(CMD_LINE_DELIMITER)) {
-            String[] cmdArray = commandLine.split(CMD_LINE_DELIMITER);
-            cmdLine = new CommandLine(cmdArray[0]);
+    /**
+     * <p>
+     * Queues <code>commandLine</code> for execution and returns immediately.
+     * The same delimiter rules apply as for
+     * {@link #executeCommandLineAndWaitResponse(String, int)}.
+     * </p>
+     *
+     * @param commandLine
+     *            the command line to execute
+     * @param timeout
+     *            timeout for execution in milliseconds
+     * @param listener
+     *            receives standard output and standard error line by line,
+     *            may be <code>null</code>
+     * @return a {@link Future} providing the result or <code>null</code> if the
+     *         command has been rejected
+     */
+    public static Future<ExecResult> executeCommandLineAsync(String commandLine, int timeout,
+            ExecOutputListener listener) {
+        return getExecService().submit(commandLine, timeout, listener);
+    }
 
-            for (int i = 1; i < cmdArray.length; i++) {
-                cmdLine.addArgument(cmdArray[i], false);
-            }
+    /**
+     * Creates a {@link CommandLine} from the given <code>commandLine</code>,
+     * honouring the special delimiter '<code>@@</code>'.
+     */
+    static CommandLine parseCommandLine(String commandLine) {
+        if (commandLine.contains(CMD_LINE_DELIMITER)) {
+            return createCommandLine(commandLine.split(CMD_LINE_DELIMITER));
         } else {
-            cmdLine = CommandLine.parse(commandLine);
-        }
-
-        DefaultExecuteResultHandler resultHandler = new DefaultExecuteResultHandler();
-
-        ExecuteWatchdog watchdog = new ExecuteWatchdog(timeout);
-        Executor executor = new DefaultExecutor();
-
-        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
-        PumpStreamHandler streamHandler = new PumpStreamHandler(stdout);
-
-        executor.setExitValue(1);
-        executor.setStreamHandler(streamHandler);
-        executor.setWatchdog(watchdog);
-
-        try {
-            executor.execute(cmdLine, resultHandler);
-            logger.debug("executed commandLine '{}'", commandLine);
-        } catch (ExecuteException e) {
-            logger.error("couldn't execute commandLine '" + commandLine + "'", e);
-        } catch (IOException e) {
-            logger.error("couldn't execute commandLine '" + commandLine + "'", e);
+            return CommandLine.parse(commandLine);
         }
+    }
 
-        // some time later the result handler callback was invoked so we
-        // can safely request the exit code
-        try {
-            resultHandler.waitFor();
-            int exitCode = resultHandler.getExitValue();
-            retval = StringUtils.chomp(stdout.toString());
-            if (resultHandler.getException() != null) {
-                logger.warn(resultHandler.getException().getMessage());
-            } else {
-                logger.debug("exit code '{}', result '{}'", exitCode, retval);
-            }
-        } catch (InterruptedException e) {
-            logger.error("Timeout occured when executing commandLine '" + commandLine + "'", e);
+    private static CommandLine createCommandLine(String[] cmdArray) {
+        CommandLine cmdLine = new CommandLine(cmdArray[0]);
+        for (int i = 1; i < cmdArray.length; i++) {
+            cmdLine.addArgument(cmdArray[i], false);
         }
-
-        return retval;
+        return cmdLine;
     }
 
 }
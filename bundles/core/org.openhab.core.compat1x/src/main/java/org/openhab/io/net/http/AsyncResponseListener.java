@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Buffers the response of an asynchronous request and exposes the response
+ * body as a {@link Future}. An optional {@link HttpResponseCallback} is
+ * notified as soon as the request has finished.
+ *
+ * @since 2.0.0
+ */
+class AsyncResponseListener extends BufferingResponseListener implements Future<String> {
+
+	private static final Logger logger = LoggerFactory.getLogger(AsyncResponseListener.class);
+
+	private final CountDownLatch latch = new CountDownLatch(1);
+
+	private final Request request;
+
+	private final HttpResponseCallback callback;
+
+	private volatile String responseBody;
+
+	private volatile Throwable failure;
+
+	private volatile boolean cancelled;
+
+	/** the cause the request is aborted with by {@link #cancel(boolean)} */
+	private volatile CancellationException cancellation;
+
+	AsyncResponseListener(Request request, int maxLength, HttpResponseCallback callback) {
+		super(maxLength);
+		this.request = request;
+		this.callback = callback;
+	}
+
+	@Override
+	public void onComplete(Result result) {
+		if (result.isFailed()) {
+			failure = result.getFailure();
+			if (cancellation != null && failure == cancellation) {
+				// recorded before the latch is released, so get() reports the cancellation
+				cancelled = true;
+			} else {
+				logger.error("Fatal transport error: {}", failure.toString());
+			}
+		} else {
+			int statusCode = result.getResponse().getStatus();
+			if (statusCode != 200) {
+				logger.warn("Method failed: {} {}", statusCode, result.getResponse().getReason());
+			}
+			responseBody = getContentAsString();
+			if (!responseBody.isEmpty()) {
+				logger.debug(responseBody);
+			}
+		}
+		latch.countDown();
+
+		if (callback != null) {
+			try {
+				if (failure != null) {
+					callback.onFailure(failure);
+				} else {
+					callback.onResponse(result.getResponse().getStatus(), responseBody);
+				}
+			} catch (Exception e) {
+				logger.error("HTTP response callback threw an exception", e);
+			}
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if (isDone()) {
+			return false;
+		}
+		// the cause has to be known before aborting, as onComplete may run before abort returns
+		CancellationException cause = new CancellationException();
+		cancellation = cause;
+		if (request.abort(cause)) {
+			cancelled = true;
+		}
+		return cancelled;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return latch.getCount() == 0;
+	}
+
+	@Override
+	public String get() throws InterruptedException, ExecutionException {
+		latch.await();
+		return getResult();
+	}
+
+	@Override
+	public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!latch.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	private String getResult() throws ExecutionException {
+		if (cancelled) {
+			throw new CancellationException();
+		}
+		if (failure != null) {
+			throw new ExecutionException(failure);
+		}
+		return responseBody;
+	}
+
+}
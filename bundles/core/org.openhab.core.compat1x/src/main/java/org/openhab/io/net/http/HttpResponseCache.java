@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * A small LRU cache for response bodies which carry an <code>ETag</code> or
+ * <code>Last-Modified</code> header. It is used by
+ * {@link HttpUtil#executeUrlCached(String, Properties, int)} to revalidate
+ * responses with conditional requests. The cache is bounded both in the
+ * number of entries and in the total number of cached characters.
+ *
+ * @since 2.0.0
+ */
+class HttpResponseCache {
+
+	/** the maximum number of cached responses */
+	private static final int MAX_ENTRIES = 64;
+
+	/** the maximum number of characters of all cached responses together */
+	private static final long MAX_TOTAL_SIZE = 4 * 1024 * 1024;
+
+	/** responses with more characters are never cached */
+	private static final int MAX_ENTRY_SIZE = 512 * 1024;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	private long totalSize = 0;
+
+	/**
+	 * Creates the key for a request of <code>url</code> with the given
+	 * (optional) <code>httpHeaders</code>. Requests with different headers
+	 * may result in different responses and are therefore cached separately.
+	 */
+	static String createKey(String url, Properties httpHeaders) {
+		if (httpHeaders == null || httpHeaders.isEmpty()) {
+			return url;
+		}
+		TreeMap<String, String> sortedHeaders = new TreeMap<String, String>();
+		for (String name : httpHeaders.stringPropertyNames()) {
+			sortedHeaders.put(name, httpHeaders.getProperty(name));
+		}
+		return url + "|" + sortedHeaders;
+	}
+
+	synchronized Entry get(String key) {
+		return entries.get(key);
+	}
+
+	synchronized void put(String key, Entry entry) {
+		remove(key);
+		if (entry.getBody().length() > MAX_ENTRY_SIZE) {
+			return;
+		}
+		entries.put(key, entry);
+		totalSize += entry.getBody().length();
+
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while ((entries.size() > MAX_ENTRIES || totalSize > MAX_TOTAL_SIZE) && it.hasNext()) {
+			totalSize -= it.next().getValue().getBody().length();
+			it.remove();
+		}
+	}
+
+	synchronized void remove(String key) {
+		Entry removed = entries.remove(key);
+		if (removed != null) {
+			totalSize -= removed.getBody().length();
+		}
+	}
+
+	/**
+	 * A cached response body together with the validators to send along
+	 * with the next request.
+	 */
+	static class Entry {
+
+		private final String body;
+		private final String eTag;
+		private final String lastModified;
+
+		Entry(String body, String eTag, String lastModified) {
+			this.body = body;
+			this.eTag = eTag;
+			this.lastModified = lastModified;
+		}
+
+		String getBody() {
+			return body;
+		}
+
+		String getETag() {
+			return eTag;
+		}
+
+		String getLastModified() {
+			return lastModified;
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+/**
+ * Callback which is notified once an asynchronous request issued through
+ * {@link HttpUtil#executeUrlAsync(String, String, java.util.Properties, java.io.InputStream, String, int, HttpResponseCallback)}
+ * has finished. Callbacks are invoked on a thread of the underlying HTTP
+ * client and must therefore return quickly.
+ *
+ * @since 2.0.0
+ */
+public interface HttpResponseCallback {
+
+	/**
+	 * Called when the response has been received completely.
+	 *
+	 * @param statusCode the HTTP status code of the response
+	 * @param responseBody the response body (may be empty but never <code>null</code>)
+	 */
+	void onResponse(int statusCode, String responseBody);
+
+	/**
+	 * Called when the request could not be executed, e.g. because of a
+	 * transport error or because the timeout has been exceeded.
+	 *
+	 * @param failure the cause of the failure
+	 */
+	void onFailure(Throwable failure);
+
+}
@@ -8,11 +8,15 @@
  */
 package org.openhab.io.net.http;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.URI;
+import java.nio.charset.Charset;
 import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,8 +37,17 @@ import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
 import org.apache.commons.httpclient.params.HttpMethodParams;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.eclipse.jetty.client.HttpProxy;
+import org.eclipse.jetty.client.Origin;
+import org.eclipse.jetty.client.api.Authentication;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.util.BasicAuthentication;
+import org.eclipse.jetty.client.util.InputStreamContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.B64Code;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -53,6 +66,28 @@ public class HttpUtil {
 	/** {@link Pattern} which matches the credentials out of an URL */ 
 	private static final Pattern URL_CREDENTIALS_PATTERN = Pattern.compile("http://(.*?):(.*?)@.*");
 	
+	/** 
+	 * the maximum size in bytes of a response body which is read into memory, 
+	 * can be changed through the System variable <code>openhab.http.maxResponseSize</code>
+	 */
+	private static final int MAX_RESPONSE_SIZE = Integer.getInteger("openhab.http.maxResponseSize", 16 * 1024 * 1024);
+	
+	/** the cache used by {@link #executeUrlCached(String, Properties, int)} */
+	private static final HttpResponseCache RESPONSE_CACHE = new HttpResponseCache();
+	
+	/** the maximum size of a response body which is buffered by the asynchronous client */
+	private static final int ASYNC_MAX_RESPONSE_LENGTH = Math.min(MAX_RESPONSE_SIZE, 2 * 1024 * 1024);
+	
+	/** the number of threads the asynchronous client uses for all its requests */
+	private static final int ASYNC_MIN_THREADS = 2;
+	private static final int ASYNC_MAX_THREADS = 10;
+	
+	/** the non-blocking client which is shared by all asynchronous requests (lazily started) */
+	private static org.eclipse.jetty.client.HttpClient asyncClient;
+	
+	/** the proxy settings the non-blocking client is currently configured with */
+	private static ProxySettings asyncProxySettings;
+	
 
 	/**
 	 * Executes the given <code>url</code> with the given <code>httpMethod</code>.
@@ -104,31 +139,7 @@ public class HttpUtil {
 	 * @return the response body or <code>NULL</code> when the request went wrong
 	 */
 	public static String executeUrl(String httpMethod, String url, Properties httpHeaders, InputStream content, String contentType, int timeout) {
-		String proxySet = System.getProperty("http.proxySet");
-		
-		String proxyHost = null;
-		int proxyPort = 80;
-		String proxyUser = null;
-		String proxyPassword = null;
-		String nonProxyHosts = null;
-		
-		if ("true".equalsIgnoreCase(proxySet)) {
-			proxyHost = System.getProperty("http.proxyHost");
-			String proxyPortString = System.getProperty("http.proxyPort");
-			if (StringUtils.isNotBlank(proxyPortString)) {
-				try {
-					proxyPort = Integer.valueOf(proxyPortString);
-				} catch(NumberFormatException e) {
-					logger.warn("'{}' is not a valid proxy port - using port 80 instead");
-				}
-			}
-			proxyUser = System.getProperty("http.proxyUser");
-			proxyPassword = System.getProperty("http.proxyPassword");
-			nonProxyHosts = System.getProperty("http.nonProxyHosts");
-		}
-		
-		return executeUrl(httpMethod, url, httpHeaders, content, contentType, timeout, proxyHost, proxyPort, proxyUser, proxyPassword, nonProxyHosts);
-
+		return readResponseBody(executeMethod(httpMethod, url, httpHeaders, content, contentType, timeout));
 	}
 	
 	/**
@@ -149,15 +160,142 @@ public class HttpUtil {
 	 * @return the response body or <code>NULL</code> when the request went wrong
 	 */
 	public static String executeUrl(String httpMethod, String url, Properties httpHeaders, InputStream content, String contentType, int timeout, String proxyHost, Integer proxyPort, String proxyUser, String proxyPassword, String nonProxyHosts) {
+		ProxySettings proxySettings = ProxySettings.of(proxyHost, proxyPort, proxyUser, proxyPassword, nonProxyHosts);
+		return readResponseBody(executeMethod(httpMethod, url, httpHeaders, content, contentType, timeout, proxySettings));
+	}
+	
+	/**
+	 * Executes a GET request on the given <code>url</code> and caches the
+	 * response body together with its <code>ETag</code> and
+	 * <code>Last-Modified</code> headers. Subsequent calls for the same
+	 * <code>url</code> (and <code>httpHeaders</code>) send a conditional
+	 * request and return the cached body if the server responds with
+	 * <code>304 Not Modified</code>. This saves transfer and parsing costs
+	 * when polling resources which rarely change.
+	 * 
+	 * @param url the url to execute
+	 * @param httpHeaders optional http request headers which has to be sent within request 
+	 * @param timeout the socket timeout to wait for data
+	 * 
+	 * @return the (possibly cached) response body or <code>NULL</code> when
+	 * the request went wrong
+	 */
+	public static String executeUrlCached(String url, Properties httpHeaders, int timeout) {
+		String cacheKey = HttpResponseCache.createKey(url, httpHeaders);
+		HttpResponseCache.Entry cached = RESPONSE_CACHE.get(cacheKey);
+		
+		Properties requestHeaders = new Properties();
+		if (httpHeaders != null) {
+			requestHeaders.putAll(httpHeaders);
+		}
+		if (cached != null) {
+			if (cached.getETag() != null) {
+				requestHeaders.setProperty("If-None-Match", cached.getETag());
+			}
+			if (cached.getLastModified() != null) {
+				requestHeaders.setProperty("If-Modified-Since", cached.getLastModified());
+			}
+		}
+		
+		HttpMethod method = executeMethod("GET", url, requestHeaders, null, null, timeout);
+		if (method == null) {
+			return null;
+		}
+		
+		if (cached != null && method.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+			method.releaseConnection();
+			logger.debug("'{}' has not been modified - using cached response", url);
+			return cached.getBody();
+		}
+		
+		String responseBody = readResponseBody(method);
+		if (responseBody != null && method.getStatusCode() == HttpStatus.SC_OK) {
+			Header eTag = method.getResponseHeader("ETag");
+			Header lastModified = method.getResponseHeader("Last-Modified");
+			if (eTag != null || lastModified != null) {
+				RESPONSE_CACHE.put(cacheKey, new HttpResponseCache.Entry(responseBody, 
+						eTag != null ? eTag.getValue() : null, 
+						lastModified != null ? lastModified.getValue() : null));
+			} else {
+				RESPONSE_CACHE.remove(cacheKey);
+			}
+		}
+		return responseBody;
+	}
+	
+	/**
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * and returns the response body as a stream instead of reading it into
+	 * memory. This is meant for large downloads which must not be subject to
+	 * the maximum response size. The <code>http.proxyXXX</code> System
+	 * variables are taken into account.
+	 * <p>
+	 * The caller <em>must</em> close the returned stream to release the
+	 * underlying connection.
+	 * 
+	 * @param httpMethod the HTTP method to use
+	 * @param url the url to execute
+	 * @param httpHeaders optional http request headers which has to be sent within request 
+	 * @param timeout the socket timeout to wait for data
+	 * 
+	 * @return the response body stream or <code>NULL</code> when the request went wrong
+	 */
+	public static InputStream executeUrlAsStream(String httpMethod, String url, Properties httpHeaders, int timeout) {
+		final HttpMethod method = executeMethod(httpMethod, url, httpHeaders, null, null, timeout);
+		if (method == null) {
+			return null;
+		}
+		try {
+			InputStream responseStream = method.getResponseBodyAsStream();
+			if (responseStream == null) {
+				method.releaseConnection();
+				return null;
+			}
+			return new FilterInputStream(responseStream) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						method.releaseConnection();
+					}
+				}
+			};
+		} catch (IOException ioe) {
+			logger.error("Fatal transport error: {}", ioe.toString());
+			method.releaseConnection();
+			return null;
+		}
+	}
+	
+	/**
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * and the proxy configured through the <code>http.proxyXXX</code> System
+	 * variables.
+	 * 
+	 * @return the executed method (whose connection must be released by the
+	 * caller) or <code>null</code> when the request went wrong
+	 */
+	private static HttpMethod executeMethod(String httpMethod, String url, Properties httpHeaders, InputStream content, String contentType, int timeout) {
+		return executeMethod(httpMethod, url, httpHeaders, content, contentType, timeout, ProxySettings.fromSystemProperties());
+	}
+	
+	/**
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * 
+	 * @return the executed method (whose connection must be released by the
+	 * caller) or <code>null</code> when the request went wrong
+	 */
+	private static HttpMethod executeMethod(String httpMethod, String url, Properties httpHeaders, InputStream content, String contentType, int timeout, ProxySettings proxySettings) {
 		
 		HttpClient client = new HttpClient();
 		
 		// only configure a proxy if a host is provided
-		if (StringUtils.isNotBlank(proxyHost) && proxyPort != null && shouldUseProxy(url, nonProxyHosts)) {
-			client.getHostConfiguration().setProxy(proxyHost, proxyPort);
-			if (StringUtils.isNotBlank(proxyUser)) {
+		if (proxySettings.shouldUseProxy(url)) {
+			client.getHostConfiguration().setProxy(proxySettings.getHost(), proxySettings.getPort());
+			if (StringUtils.isNotBlank(proxySettings.getUser())) {
 				client.getState().setProxyCredentials(AuthScope.ANY,
-					new UsernamePasswordCredentials(proxyUser, proxyPassword));
+					new UsernamePasswordCredentials(proxySettings.getUser(), proxySettings.getPassword()));
 			}
 		}
 		  
@@ -193,20 +331,49 @@ public class HttpUtil {
 		try {
 			
 			int statusCode = client.executeMethod(method);
-			if (statusCode != HttpStatus.SC_OK) {
+			if (statusCode != HttpStatus.SC_OK && statusCode != HttpStatus.SC_NOT_MODIFIED) {
 				logger.warn("Method failed: " + method.getStatusLine());
 			}
-
-			String responseBody = IOUtils.toString(method.getResponseBodyAsStream());
+			
+			return method;
+		}
+		catch (HttpException he) {
+			logger.error("Fatal protocol violation: {}", he.toString());
+		}
+		catch (IOException ioe) {
+			logger.error("Fatal transport error: {}", ioe.toString());
+		}
+		
+		method.releaseConnection();
+		return null;
+	}
+	
+	/**
+	 * Reads the response body of the given (already executed) <code>method</code>
+	 * and releases its connection afterwards. Responses which exceed
+	 * {@link #MAX_RESPONSE_SIZE} bytes are rejected.
+	 * 
+	 * @param method the executed method or <code>null</code>
+	 * @return the response body or <code>NULL</code> when the response could
+	 * not be read or was too large
+	 */
+	private static String readResponseBody(HttpMethod method) {
+		if (method == null) {
+			return null;
+		}
+		
+		try {
+			String responseBody = "";
+			InputStream responseStream = method.getResponseBodyAsStream();
+			if (responseStream != null) {
+				responseBody = toBoundedString(responseStream, method.getResponseHeader("Content-Length"));
+			}
 			if (!responseBody.isEmpty()) {
 				logger.debug(responseBody);
 			}
 			
 			return responseBody;
 		}
-		catch (HttpException he) {
-			logger.error("Fatal protocol violation: {}", he.toString());
-		}
 		catch (IOException ioe) {
 			logger.error("Fatal transport error: {}", ioe.toString());
 		}
@@ -216,49 +383,210 @@ public class HttpUtil {
 		
 		return null;
 	}
+	
+	/**
+	 * Reads the given <code>stream</code> into a String but fails as soon as
+	 * more than {@link #MAX_RESPONSE_SIZE} bytes are announced or received.
+	 */
+	private static String toBoundedString(InputStream stream, Header contentLength) throws IOException {
+		if (contentLength != null) {
+			try {
+				if (Long.parseLong(contentLength.getValue().trim()) > MAX_RESPONSE_SIZE) {
+					throw new IOException("response of " + contentLength.getValue() + " bytes exceeds the maximum response size of " + MAX_RESPONSE_SIZE + " bytes");
+				}
+			} catch (NumberFormatException e) {
+				// ignore the header and rely on counting the bytes read
+			}
+		}
+		
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		byte[] chunk = new byte[4096];
+		int read;
+		while ((read = stream.read(chunk)) != -1) {
+			if (buffer.size() + read > MAX_RESPONSE_SIZE) {
+				throw new IOException("response exceeds the maximum response size of " + MAX_RESPONSE_SIZE + " bytes");
+			}
+			buffer.write(chunk, 0, read);
+		}
+		return new String(buffer.toByteArray(), Charset.defaultCharset());
+	}
 
 	/**
-	 * Determines whether the list of <code>nonProxyHosts</code> contains the
-	 * host (which is part of the given <code>urlString</code> or not.
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * asynchronously. The calling thread is not blocked; the request is
+	 * processed by a shared non-blocking HTTP client instead.
+	 * 
+	 * @param httpMethod the HTTP method to use
+	 * @param url the url to execute
+	 * @param timeout the total time in milliseconds the request may take
+	 * 
+	 * @return a {@link Future} which provides the response body or <code>null</code>
+	 * if the request could not be issued at all
+	 */
+	public static Future<String> executeUrlAsync(String httpMethod, String url, int timeout) {
+		return executeUrlAsync(httpMethod, url, null, null, null, timeout, null);
+	}
+	
+	/**
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * asynchronously and notifies <code>callback</code> once the request has
+	 * finished.
 	 * 
-	 * @param urlString
-	 * @param nonProxyHosts
+	 * @param httpMethod the HTTP method to use
+	 * @param url the url to execute
+	 * @param timeout the total time in milliseconds the request may take
+	 * @param callback the callback to notify or <code>null</code>
 	 * 
-	 * @return <code>false</code> if the host of the given <code>urlString</code>
-	 * is contained in <code>nonProxyHosts</code>-list and <code>true</code>
-	 * otherwise
+	 * @return a {@link Future} which provides the response body or <code>null</code>
+	 * if the request could not be issued at all
 	 */
-	private static boolean shouldUseProxy(String urlString, String nonProxyHosts) {
+	public static Future<String> executeUrlAsync(String httpMethod, String url, int timeout, HttpResponseCallback callback) {
+		return executeUrlAsync(httpMethod, url, null, null, null, timeout, callback);
+	}
+	
+	/**
+	 * Executes the given <code>url</code> with the given <code>httpMethod</code>
+	 * asynchronously. The calling thread is not blocked; the request is
+	 * processed by a shared non-blocking HTTP client which uses a small, fixed
+	 * number of threads for all outstanding requests. The
+	 * <code>http.proxyXXX</code> System variables are taken into account when
+	 * the client is started.
+	 * 
+	 * @param httpMethod the HTTP method to use
+	 * @param url the url to execute
+	 * @param httpHeaders optional http request headers which has to be sent within request
+	 * @param content the content to be send to the given <code>url</code> or 
+	 * <code>null</code> if no content should be send.
+	 * @param contentType the content type of the given <code>content</code>
+	 * @param timeout the total time in milliseconds the request may take
+	 * @param callback the callback to notify when the request has finished or
+	 * <code>null</code> if the caller only uses the returned {@link Future}
+	 * 
+	 * @return a {@link Future} which provides the response body or <code>null</code>
+	 * if the request could not be issued at all
+	 * @throws IllegalArgumentException if <code>httpMethod</code> is none of
+	 * <code>GET</code>, <code>PUT</code>, <code>POST</code> or <code>DELETE</code>
+	 */
+	public static Future<String> executeUrlAsync(String httpMethod, String url, Properties httpHeaders, InputStream content, String contentType, int timeout, HttpResponseCallback callback) {
 		
-		if (StringUtils.isNotBlank(nonProxyHosts)) {
-			String givenHost = urlString;
-			
+		org.eclipse.jetty.client.HttpClient client = getAsyncClient();
+		if (client == null) {
+			return null;
+		}
+		
+		Request request = createAsyncRequest(client, httpMethod, url);
+		request.timeout(timeout, TimeUnit.MILLISECONDS);
+		if (httpHeaders != null) {
+			for (String httpHeaderKey : httpHeaders.stringPropertyNames()) {
+				request.header(httpHeaderKey, httpHeaders.getProperty(httpHeaderKey));
+			}
+		}
+		// add content if a valid method is given ...
+		if (content != null && !"GET".equals(httpMethod) && !"DELETE".equals(httpMethod)) {
+			request.content(new InputStreamContentProvider(content), contentType);
+		}
+		
+		Credentials credentials = extractCredentials(url);
+		if (credentials instanceof UsernamePasswordCredentials) {
+			UsernamePasswordCredentials upc = (UsernamePasswordCredentials) credentials;
+			String userInfo = upc.getUserName() + ":" + upc.getPassword();
+			request.header(HttpHeader.AUTHORIZATION, "Basic " + B64Code.encode(userInfo, "ISO-8859-1"));
+		}
+		
+		logger.debug("About to execute '{}' asynchronously", request.getURI());
+		
+		AsyncResponseListener listener = new AsyncResponseListener(request, ASYNC_MAX_RESPONSE_LENGTH, callback);
+		request.send(listener);
+		return listener;
+	}
+
+	/**
+	 * Factory method to create a {@link Request} of the asynchronous client
+	 * according to the given String <code>httpMethod</code>
+	 * 
+	 * @throws IllegalArgumentException if <code>httpMethod</code> is none of
+	 * <code>GET</code>, <code>PUT</code>, <code>POST</code> or <code>DELETE</code>
+	 */
+	private static Request createAsyncRequest(org.eclipse.jetty.client.HttpClient client, String httpMethodString, String url) {
+		if ("GET".equals(httpMethodString) || "PUT".equals(httpMethodString)
+				|| "POST".equals(httpMethodString) || "DELETE".equals(httpMethodString)) {
+			return client.newRequest(url).method(httpMethodString);
+		} else {
+			throw new IllegalArgumentException("given httpMethod '" + httpMethodString + "' is unknown");
+		}
+	}
+	
+	/**
+	 * Returns the shared non-blocking client and starts it on first use. The
+	 * proxy configuration of the client is updated whenever the
+	 * <code>http.proxyXXX</code> System variables have changed.
+	 * 
+	 * @return the started client or <code>null</code> if it could not be started
+	 */
+	private static synchronized org.eclipse.jetty.client.HttpClient getAsyncClient() {
+		ProxySettings proxySettings = ProxySettings.fromSystemProperties();
+		if (asyncClient != null && proxySettings != asyncProxySettings) {
+			configureAsyncProxy(asyncClient, proxySettings);
+		}
+		if (asyncClient == null) {
+			org.eclipse.jetty.client.HttpClient client = new org.eclipse.jetty.client.HttpClient(new SslContextFactory());
+			QueuedThreadPool threadPool = new QueuedThreadPool(ASYNC_MAX_THREADS, ASYNC_MIN_THREADS);
+			threadPool.setName("HttpUtil-async");
+			threadPool.setDaemon(true);
+			client.setExecutor(threadPool);
+			configureAsyncProxy(client, proxySettings);
 			try {
-				URL url = new URL(urlString);
-				givenHost = url.getHost();
-			} catch (MalformedURLException e) {
-				logger.error("the given url {} is malformed", urlString);
+				client.start();
+			} catch (Exception e) {
+				logger.error("Could not start asynchronous HTTP client: {}", e.getMessage());
+				return null;
 			}
-			
-			String[] hosts = nonProxyHosts.split("\\|");
-			for (String host : hosts) {
-				if (host.contains("*")) {
-					// the nonProxyHots-pattern allows wildcards '*' which must
-					// be masked to be used with regular expressions
-					String hostRegexp = host.replaceAll("\\.", "\\\\.");
-					hostRegexp = hostRegexp.replaceAll("\\*", ".*");
-					if (givenHost.matches(hostRegexp)) {
-						return false;
-					}
-				} else {
-					if (givenHost.equals(host)) {
-						return false;
-					}
-				}
+			asyncClient = client;
+		}
+		return asyncClient;
+	}
+	
+	/**
+	 * Stops the shared non-blocking client (if it has been started). Any
+	 * outstanding asynchronous requests are aborted.
+	 */
+	public static synchronized void stopAsyncClient() {
+		if (asyncClient != null) {
+			try {
+				asyncClient.stop();
+			} catch (Exception e) {
+				logger.error("Could not stop asynchronous HTTP client: {}", e.getMessage());
 			}
+			asyncClient = null;
+			asyncProxySettings = null;
+		}
+	}
+	
+	/**
+	 * Configures the proxy of the given asynchronous <code>client</code>
+	 * according to the given <code>proxySettings</code>.
+	 */
+	private static void configureAsyncProxy(org.eclipse.jetty.client.HttpClient client, final ProxySettings proxySettings) {
+		client.getProxyConfiguration().getProxies().clear();
+		client.getAuthenticationStore().clearAuthentications();
+		asyncProxySettings = proxySettings;
+		
+		if (!proxySettings.isEnabled()) {
+			return;
 		}
 		
-		return true;
+		client.getProxyConfiguration().getProxies().add(new HttpProxy(proxySettings.getHost(), proxySettings.getPort()) {
+			@Override
+			public boolean matches(Origin origin) {
+				return proxySettings.shouldUseProxyForHost(origin.getAddress().getHost());
+			}
+		});
+		
+		if (StringUtils.isNotBlank(proxySettings.getUser())) {
+			URI proxyUri = URI.create("http://" + proxySettings.getHost() + ":" + proxySettings.getPort());
+			client.getAuthenticationStore().addAuthentication(new BasicAuthentication(proxyUri,
+				Authentication.ANY_REALM, proxySettings.getUser(), proxySettings.getPassword()));
+		}
 	}
 
 	/**
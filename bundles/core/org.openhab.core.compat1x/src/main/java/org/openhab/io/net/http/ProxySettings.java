@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.net.http;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Immutable, precompiled proxy configuration. The <code>nonProxyHosts</code>
+ * list is parsed once into a set of exact host names, a suffix trie for
+ * entries of the form <code>*.domain.org</code> and compiled patterns for
+ * all other wildcard entries.
+ * <p>
+ * Instances are reused for as long as the underlying settings do not change,
+ * so callers can ask for the current settings on every request without
+ * re-parsing anything.
+ *
+ * @since 2.0.0
+ */
+final class ProxySettings {
+
+	private static final Logger logger = LoggerFactory.getLogger(ProxySettings.class);
+
+	/** settings which never route requests through a proxy */
+	static final ProxySettings NONE = new ProxySettings(null, null, null, null, null);
+
+	/** the settings last built from the <code>http.proxyXXX</code> System variables */
+	private static volatile ProxySettings systemSettings = NONE;
+
+	/** the settings last built from explicitly passed parameters */
+	private static volatile ProxySettings explicitSettings = NONE;
+
+	private final String host;
+	private final String portString;
+	private final int port;
+	private final String user;
+	private final String password;
+	private final String nonProxyHosts;
+
+	private final Set<String> exactHosts = new HashSet<String>();
+	private final SuffixNode suffixes = new SuffixNode();
+	private final List<Pattern> patterns = new ArrayList<Pattern>();
+
+	private ProxySettings(String host, String portString, String user, String password, String nonProxyHosts) {
+		this.host = host;
+		this.portString = portString;
+		this.user = user;
+		this.password = password;
+		this.nonProxyHosts = nonProxyHosts;
+
+		int parsedPort = 80;
+		if (StringUtils.isNotBlank(portString)) {
+			try {
+				parsedPort = Integer.valueOf(portString.trim());
+			} catch (NumberFormatException e) {
+				logger.warn("'{}' is not a valid proxy port - using port 80 instead", portString);
+			}
+		}
+		this.port = parsedPort;
+
+		if (StringUtils.isNotBlank(nonProxyHosts)) {
+			for (String entry : nonProxyHosts.split("\\|")) {
+				compileEntry(entry);
+			}
+		}
+	}
+
+	/**
+	 * Returns the settings defined by the <code>http.proxyXXX</code> System
+	 * variables. A new instance is only built if one of the variables has
+	 * changed since the last call.
+	 */
+	static ProxySettings fromSystemProperties() {
+		if (!"true".equalsIgnoreCase(System.getProperty("http.proxySet"))) {
+			return NONE;
+		}
+		String host = System.getProperty("http.proxyHost");
+		String portString = System.getProperty("http.proxyPort");
+		String user = System.getProperty("http.proxyUser");
+		String password = System.getProperty("http.proxyPassword");
+		String nonProxyHosts = System.getProperty("http.nonProxyHosts");
+
+		ProxySettings current = systemSettings;
+		if (!current.isSameAs(host, portString, user, password, nonProxyHosts)) {
+			current = new ProxySettings(host, portString, user, password, nonProxyHosts);
+			systemSettings = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns the settings for the given parameters. The last instance is
+	 * reused if it has been built from the same parameters.
+	 */
+	static ProxySettings of(String host, Integer port, String user, String password, String nonProxyHosts) {
+		if (StringUtils.isBlank(host) || port == null) {
+			return NONE;
+		}
+		String portString = port.toString();
+
+		ProxySettings current = explicitSettings;
+		if (!current.isSameAs(host, portString, user, password, nonProxyHosts)) {
+			current = new ProxySettings(host, portString, user, password, nonProxyHosts);
+			explicitSettings = current;
+		}
+		return current;
+	}
+
+	private boolean isSameAs(String host, String portString, String user, String password, String nonProxyHosts) {
+		return ObjectUtils.equals(this.host, host) && ObjectUtils.equals(this.portString, portString)
+				&& ObjectUtils.equals(this.user, user) && ObjectUtils.equals(this.password, password)
+				&& ObjectUtils.equals(this.nonProxyHosts, nonProxyHosts);
+	}
+
+	private void compileEntry(String entry) {
+		if (entry.isEmpty()) {
+			return;
+		}
+		if (!entry.contains("*")) {
+			exactHosts.add(entry);
+		} else if (entry.startsWith("*.") && entry.indexOf('*', 1) == -1) {
+			suffixes.add(entry.substring(2).split("\\."));
+		} else {
+			// the nonProxyHots-pattern allows wildcards '*' which must
+			// be masked to be used with regular expressions
+			String hostRegexp = entry.replaceAll("\\.", "\\\\.");
+			hostRegexp = hostRegexp.replaceAll("\\*", ".*");
+			patterns.add(Pattern.compile(hostRegexp));
+		}
+	}
+
+	/**
+	 * @return <code>true</code> if a proxy host is configured at all
+	 */
+	boolean isEnabled() {
+		return StringUtils.isNotBlank(host);
+	}
+
+	/**
+	 * Determines whether a request to the given <code>urlString</code> has to
+	 * be routed through the proxy.
+	 *
+	 * @param urlString the url which is about to be requested
+	 * @return <code>true</code> if a proxy is configured and the host of
+	 *         <code>urlString</code> is not contained in the nonProxyHosts list
+	 */
+	boolean shouldUseProxy(String urlString) {
+		if (!isEnabled()) {
+			return false;
+		}
+		String givenHost = urlString;
+		try {
+			givenHost = new URL(urlString).getHost();
+		} catch (MalformedURLException e) {
+			logger.error("the given url {} is malformed", urlString);
+		}
+		return shouldUseProxyForHost(givenHost);
+	}
+
+	/**
+	 * Determines whether a request to the given <code>host</code> has to be
+	 * routed through the proxy.
+	 */
+	boolean shouldUseProxyForHost(String host) {
+		return isEnabled() && !isNonProxyHost(host);
+	}
+
+	private boolean isNonProxyHost(String host) {
+		// matched case-sensitively like the nonProxyHosts handling always did
+		if (exactHosts.contains(host) || suffixes.matches(host.split("\\."))) {
+			return true;
+		}
+		for (Pattern pattern : patterns) {
+			if (pattern.matcher(host).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	String getHost() {
+		return host;
+	}
+
+	int getPort() {
+		return port;
+	}
+
+	String getUser() {
+		return user;
+	}
+
+	String getPassword() {
+		return password;
+	}
+
+	/**
+	 * A trie over the reversed labels of host names. A node is marked as a
+	 * wildcard if an entry <code>*.&lt;labels up to this node&gt;</code> exists.
+	 */
+	private static class SuffixNode {
+
+		private final Map<String, SuffixNode> children = new HashMap<String, SuffixNode>();
+		private boolean wildcard;
+
+		void add(String[] labels) {
+			SuffixNode node = this;
+			for (int i = labels.length - 1; i >= 0; i--) {
+				SuffixNode child = node.children.get(labels[i]);
+				if (child == null) {
+					child = new SuffixNode();
+					node.children.put(labels[i], child);
+				}
+				node = child;
+			}
+			node.wildcard = true;
+		}
+
+		boolean matches(String[] labels) {
+			SuffixNode node = this;
+			for (int i = labels.length - 1; i > 0; i--) {
+				node = node.children.get(labels[i]);
+				if (node == null) {
+					return false;
+				}
+				if (node.wildcard) {
+					// at least one more label is left for the '*'
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+}